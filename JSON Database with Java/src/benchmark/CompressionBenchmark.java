@@ -0,0 +1,158 @@
+package benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import server.BinaryStorage;
+import server.FrameCodec;
+import server.JsonStorage;
+import server.Response;
+import server.Storage;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+public class CompressionBenchmark {
+
+    private static final int DOCUMENTS = 20_000;
+    private static final int WARMUP_PASSES = 2;
+    private static final int VALUE_THRESHOLD = 256;
+    private static final long READ_DURATION_MS = 2000;
+    private static final int RESPONSE_DOCUMENTS = 200;
+    private static final int RESPONSE_ROUNDS = 500;
+    private static final String[] WORDS = {
+            "json", "database", "server", "client", "request", "response", "value", "key",
+            "storage", "snapshot", "replica", "shard", "index", "query", "latency", "throughput"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : DOCUMENTS;
+        Path dataDir = Files.createTempDirectory("jsondb-compression");
+        List<JsonElement> values = generate(documents);
+
+        for (int pass = 0; pass <= WARMUP_PASSES; pass++) {
+            boolean report = pass == WARMUP_PASSES;
+            List<JsonElement> sample = report ? values : values.subList(0, Math.min(values.size(), 2000));
+            if (report) {
+                System.out.printf("%d documents, snapshot size and throughput per format%n", documents);
+                System.out.printf("%-26s %12s %10s %10s %10s %10s%n", "format", "bytes", "puts/s", "write ms", "read ms", "gets/s");
+            }
+            run("json pretty", () -> new JsonStorage(false), dataDir, sample, report);
+            run("json gzip", () -> new JsonStorage(true), dataDir, sample, report);
+            run("binary", () -> new BinaryStorage(0, false), dataDir, sample, report);
+            run("binary values>" + VALUE_THRESHOLD, () -> new BinaryStorage(VALUE_THRESHOLD, false), dataDir, sample, report);
+            run("binary values>" + VALUE_THRESHOLD + " gzip", () -> new BinaryStorage(VALUE_THRESHOLD, true), dataDir, sample, report);
+        }
+
+        wire(values, false);
+        System.out.printf("%nget response of %d documents on a length-framed session%n", RESPONSE_DOCUMENTS);
+        wire(values, true);
+    }
+
+    private static void run(String name, Supplier<Storage> engine, Path dataDir, List<JsonElement> values,
+                            boolean report) throws Exception {
+        Storage storage = engine.get();
+        long start = System.nanoTime();
+        for (int i = 0; i < values.size(); i++) {
+            storage.put("doc" + i, values.get(i));
+        }
+        long putsPerSecond = values.size() * 1_000_000_000L / (System.nanoTime() - start);
+
+        File file = dataDir.resolve(name.replaceAll("[^a-z0-9]+", "-") + ".snapshot").toFile();
+        start = System.nanoTime();
+        storage.snapshot().writeTo(file);
+        long writeMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Storage restored = engine.get();
+        start = System.nanoTime();
+        restored.readSnapshot(file);
+        long readMillis = (System.nanoTime() - start) / 1_000_000;
+        if (restored.size() != values.size()) {
+            throw new IllegalStateException(name + " restored " + restored.size() + " of " + values.size() + " documents");
+        }
+
+        long reads = 0;
+        long deadline = System.currentTimeMillis() + (report ? READ_DURATION_MS : READ_DURATION_MS / 10);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.currentTimeMillis() < deadline) {
+            restored.get("doc" + random.nextInt(values.size()));
+            reads++;
+        }
+        if (report) {
+            System.out.printf("%-26s %12d %10d %10d %10d %10d%n", name, file.length(), putsPerSecond,
+                    writeMillis, readMillis, reads * 1000 / READ_DURATION_MS);
+        }
+    }
+
+    private static void wire(List<JsonElement> values, boolean report) {
+        JsonArray documents = new JsonArray();
+        for (int i = 0; i < RESPONSE_DOCUMENTS; i++) {
+            documents.add(values.get(i));
+        }
+        Response response = new Response("OK", documents, null);
+
+        long plainBytes = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < RESPONSE_ROUNDS; round++) {
+            plainBytes = sizeOf(FrameCodec.encode(response));
+        }
+        long plainMicros = (System.nanoTime() - start) / 1000 / RESPONSE_ROUNDS;
+
+        long compressedBytes = 0;
+        start = System.nanoTime();
+        for (int round = 0; round < RESPONSE_ROUNDS; round++) {
+            compressedBytes = sizeOf(FrameCodec.compress(FrameCodec.encode(response), 0));
+        }
+        long compressedMicros = (System.nanoTime() - start) / 1000 / RESPONSE_ROUNDS;
+
+        if (!report) {
+            return;
+        }
+        System.out.printf("%-26s %12s %14s%n", "framing", "bytes", "encode us");
+        System.out.printf("%-26s %12d %14d%n", "length", plainBytes, plainMicros);
+        System.out.printf("%-26s %12d %14d%n", "length deflate", compressedBytes, compressedMicros);
+    }
+
+    private static long sizeOf(List<ByteBuffer> frame) {
+        long size = 0;
+        for (ByteBuffer buffer : frame) {
+            size += buffer.remaining();
+        }
+        return size;
+    }
+
+    private static List<JsonElement> generate(int count) {
+        Random random = new Random(42);
+        List<JsonElement> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JsonObject document = new JsonObject();
+            document.addProperty("id", i);
+            document.addProperty("name", "user" + i);
+            document.addProperty("email", "user" + i + "@example.com");
+            document.addProperty("active", random.nextBoolean());
+            JsonObject address = new JsonObject();
+            address.addProperty("city", WORDS[random.nextInt(WORDS.length)] + " city");
+            address.addProperty("zip", String.valueOf(10000 + random.nextInt(90000)));
+            document.add("address", address);
+            JsonArray tags = new JsonArray();
+            for (int t = 0; t < 4; t++) {
+                tags.add(WORDS[random.nextInt(WORDS.length)]);
+            }
+            document.add("tags", tags);
+            StringBuilder bio = new StringBuilder();
+            for (int w = 0; w < 40; w++) {
+                bio.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            document.addProperty("bio", bio.toString().trim());
+            values.add(document);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,57 @@
+package benchmark;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ConnectionLoadTest {
+
+    public static void main(String[] args) throws IOException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        String address = "127.0.0.1";
+        int port = 23456;
+
+        List<Socket> sockets = new ArrayList<>(connections);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < connections; i++) {
+                Socket socket = new Socket(InetAddress.getByName(address), port);
+                DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+                output.writeUTF("{\"type\":\"session\"}");
+                new DataInputStream(socket.getInputStream()).readUTF();
+                sockets.add(socket);
+            }
+        } catch (IOException e) {
+            System.out.println("Stopped opening connections after " + sockets.size() + ": " + e.getMessage());
+        }
+        System.out.printf("Opened %d sessions in %d ms%n", sockets.size(), (System.nanoTime() - start) / 1_000_000);
+
+        long[] latencies = new long[sockets.size()];
+        start = System.nanoTime();
+        for (int i = 0; i < sockets.size(); i++) {
+            Socket socket = sockets.get(i);
+            long sent = System.nanoTime();
+            new DataOutputStream(socket.getOutputStream()).writeUTF("{\"type\":\"get\",\"key\":\"load-test\"}");
+            new DataInputStream(socket.getInputStream()).readUTF();
+            latencies[i] = System.nanoTime() - sent;
+        }
+        long elapsed = System.nanoTime() - start;
+        Arrays.sort(latencies);
+        if (latencies.length > 0) {
+            System.out.printf("Served one request on each idle session: %d req/s, p50=%d us, p99=%d us, max=%d us%n",
+                    latencies.length * 1_000_000_000L / Math.max(1, elapsed),
+                    latencies[latencies.length / 2] / 1000,
+                    latencies[(int) (latencies.length * 0.99)] / 1000,
+                    latencies[latencies.length - 1] / 1000);
+        }
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import server.Histogram;
+import server.Main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class EngineBenchmark {
+
+    private static final long ITERATION_MS = Long.getLong("benchmark.iterationMs", 1000);
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("benchmark.warmupIterations", 1);
+    private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 3);
+    private static final int KEYS = 10_000;
+    private static final int DELETES = 50_000;
+    private static final int[] DEPTHS = {1, 2, 4, 6, 8, 10};
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+    private static final int[] READ_PERCENTS = {100, 95, 50, 0};
+    private static final int[] VALUE_BYTES = {16, 1024, 64 * 1024, 1024 * 1024};
+
+    private interface Operation {
+        void run(ThreadLocalRandom random);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "all";
+        Path dataDir = Files.createTempDirectory("jsondb-engine");
+        System.setProperty("jsondb.dataDir", dataDir.toString());
+        if (System.getProperty("jsondb.persistence") == null) {
+            System.setProperty("jsondb.persistence", "wal");
+            System.setProperty("jsondb.wal.sync", "none");
+        }
+        Main.openStorage();
+        System.out.printf("persistence=%s wal.sync=%s, %d warmup and %d measured iterations of %d ms%n",
+                System.getProperty("jsondb.persistence"), System.getProperty("jsondb.wal.sync", "always"),
+                WARMUP_ITERATIONS, ITERATIONS, ITERATION_MS);
+        System.out.printf("%-34s %8s %12s %10s %10s %10s%n", "benchmark", "threads", "ops/s", "p50 us", "p99 us", "p999 us");
+
+        if (scenario.equals("all") || scenario.equals("get")) {
+            pointGet();
+        }
+        if (scenario.equals("all") || scenario.equals("path")) {
+            keyPaths();
+        }
+        if (scenario.equals("all") || scenario.equals("delete")) {
+            delete();
+        }
+        if (scenario.equals("all") || scenario.equals("mixed")) {
+            mixed();
+        }
+        if (scenario.equals("all") || scenario.equals("size")) {
+            valueSizes();
+        }
+        Main.closeStorage();
+    }
+
+    private static void pointGet() {
+        for (int i = 0; i < KEYS; i++) {
+            Main.handleRequest("set", new JsonPrimitive("key" + i), new JsonPrimitive(i));
+        }
+        measure("get point", 1, random -> Main.handleRequest("get", new JsonPrimitive("key" + random.nextInt(KEYS)), null));
+    }
+
+    private static void keyPaths() {
+        for (int depth : DEPTHS) {
+            JsonArray path = pathOfDepth(depth);
+            Main.handleRequest("set", path, new JsonPrimitive(0));
+            measure("get path depth=" + depth, 1, random -> Main.handleRequest("get", path, null));
+            measure("set path depth=" + depth, 1, random -> Main.handleRequest("set", path, new JsonPrimitive(random.nextInt())));
+        }
+    }
+
+    private static void delete() throws InterruptedException {
+        for (int threads : new int[]{1, 4}) {
+            Histogram latencyMicros = new Histogram();
+            long elapsed = 0;
+            for (int iteration = 0; iteration < WARMUP_ITERATIONS + ITERATIONS; iteration++) {
+                for (int i = 0; i < DELETES; i++) {
+                    Main.handleRequest("set", new JsonPrimitive("delete" + i), new JsonPrimitive(i));
+                }
+                boolean measured = iteration >= WARMUP_ITERATIONS;
+                long start = System.nanoTime();
+                List<Thread> workers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int first = t;
+                    Thread worker = new Thread(() -> {
+                        for (int i = first; i < DELETES; i += threads) {
+                            long sent = System.nanoTime();
+                            Main.handleRequest("delete", new JsonPrimitive("delete" + i), null);
+                            if (measured) {
+                                latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+                            }
+                        }
+                    });
+                    workers.add(worker);
+                    worker.start();
+                }
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+                if (measured) {
+                    elapsed += System.nanoTime() - start;
+                }
+            }
+            report("delete", threads, latencyMicros.getCount() * 1_000_000_000L / Math.max(1, elapsed), latencyMicros);
+        }
+    }
+
+    private static void mixed() {
+        for (int readPercent : READ_PERCENTS) {
+            for (int threads : THREADS) {
+                measure("mixed reads=" + readPercent + "%", threads, random -> {
+                    JsonPrimitive key = new JsonPrimitive("key" + random.nextInt(KEYS));
+                    if (random.nextInt(100) < readPercent) {
+                        Main.handleRequest("get", key, null);
+                    } else {
+                        Main.handleRequest("set", key, new JsonPrimitive(random.nextInt()));
+                    }
+                });
+            }
+        }
+    }
+
+    private static void valueSizes() {
+        for (int bytes : VALUE_BYTES) {
+            JsonObject value = valueOfSize(bytes);
+            JsonPrimitive key = new JsonPrimitive("sized" + bytes);
+            Main.handleRequest("set", key, value);
+            measure("set value=" + bytes + "B", 1, random -> Main.handleRequest("set", key, value));
+            measure("get value=" + bytes + "B", 1, random -> Main.handleRequest("get", key, null));
+        }
+    }
+
+    private static void measure(String name, int threads, Operation operation) {
+        Histogram latencyMicros = new Histogram();
+        LongAdder operations = new LongAdder();
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS + ITERATIONS; iteration++) {
+            boolean measured = iteration >= WARMUP_ITERATIONS;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ITERATION_MS);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long now;
+                    while ((now = System.nanoTime()) < deadline) {
+                        operation.run(random);
+                        if (measured) {
+                            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - now));
+                            operations.increment();
+                        }
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        report(name, threads, operations.sum() * 1000 / (ITERATION_MS * ITERATIONS), latencyMicros);
+    }
+
+    private static void report(String name, int threads, long opsPerSecond, Histogram latencyMicros) {
+        System.out.printf("%-34s %8d %12d %10d %10d %10d%n", name, threads, opsPerSecond,
+                latencyMicros.getPercentile(50), latencyMicros.getPercentile(99), latencyMicros.getPercentile(99.9));
+    }
+
+    private static JsonArray pathOfDepth(int depth) {
+        JsonArray path = new JsonArray();
+        path.add("deep" + depth);
+        for (int level = 1; level < depth; level++) {
+            path.add("level" + level);
+        }
+        return path;
+    }
+
+    private static JsonObject valueOfSize(int bytes) {
+        JsonObject value = new JsonObject();
+        int fieldBytes = Math.min(bytes, 1024);
+        StringBuilder text = new StringBuilder();
+        while (text.length() < fieldBytes) {
+            text.append((char) ('a' + text.length() % 26));
+        }
+        for (int field = 0; field * fieldBytes < bytes; field++) {
+            value.addProperty("field" + field, text.toString());
+        }
+        return value;
+    }
+}
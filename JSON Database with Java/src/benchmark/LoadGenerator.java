@@ -0,0 +1,98 @@
+package benchmark;
+
+import server.Histogram;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadGenerator {
+
+    public static void main(String[] args) throws InterruptedException {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int readPercent = args.length > 2 ? Integer.parseInt(args[2]) : 90;
+        int keys = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        int valueBytes = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+        String address = System.getProperty("jsondb.address", "127.0.0.1");
+        int port = Integer.getInteger("jsondb.port", 23456);
+
+        String value = "\"" + "x".repeat(valueBytes) + "\"";
+        Histogram latencyMicros = new Histogram();
+        LongAdder errors = new LongAdder();
+        LongAdder busy = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Thread> clients = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            Thread client = new Thread(() -> {
+                try (Socket socket = new Socket(InetAddress.getByName(address), port)) {
+                    socket.setTcpNoDelay(true);
+                    DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    output.writeUTF("{\"type\":\"session\",\"framing\":\"length\"}");
+                    output.flush();
+                    input.readUTF();
+
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long sent;
+                    while ((sent = System.nanoTime()) < deadline) {
+                        String key = "\"load" + random.nextInt(keys) + "\"";
+                        String request = random.nextInt(100) < readPercent
+                                ? "{\"type\":\"get\",\"key\":" + key + "}"
+                                : "{\"type\":\"set\",\"key\":" + key + ",\"value\":" + value + "}";
+                        writeFrame(output, request);
+                        String response = readFrame(input);
+                        latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sent));
+                        if (response.contains("\"BUSY\"")) {
+                            busy.increment();
+                        } else if (response.contains("\"ERROR\"") && !response.contains("No such key")) {
+                            errors.increment();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.println("Connection failed: " + e.getMessage());
+                    errors.increment();
+                }
+            });
+            clients.add(client);
+            client.start();
+        }
+        long start = System.nanoTime();
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%d connections, %d%% reads, %d keys, %d-byte values, %d s%n",
+                connections, readPercent, keys, valueBytes, seconds);
+        System.out.printf("%d requests, %d req/s, %d busy, %d errors%n", latencyMicros.getCount(),
+                latencyMicros.getCount() * 1_000_000_000L / Math.max(1, elapsed), busy.sum(), errors.sum());
+        System.out.printf("latency p50=%d us, p99=%d us, p999=%d us, max=%d us%n",
+                latencyMicros.getPercentile(50), latencyMicros.getPercentile(99),
+                latencyMicros.getPercentile(99.9), latencyMicros.getMax());
+    }
+
+    private static void writeFrame(DataOutputStream output, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+        output.flush();
+    }
+
+    private static String readFrame(DataInputStream input) throws IOException {
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,73 @@
+package benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonPrimitive;
+import server.Main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LockScalingBenchmark {
+
+    private static final int KEYS = 1000;
+    private static final long DURATION_MS = 2000;
+    private static final int READ_PERCENT = 90;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        Path dataDir = Files.createTempDirectory("jsondb-bench");
+        System.setProperty("jsondb.dataDir", dataDir.toString());
+        System.setProperty("jsondb.persistence", "wal");
+        System.setProperty("jsondb.wal.sync", "none");
+        Main.openStorage();
+
+        for (int i = 0; i < KEYS; i++) {
+            Main.handleRequest("set", path(i), new JsonPrimitive(0));
+        }
+
+        System.out.printf("Mixed workload, %d%% reads, %d root keys%n", READ_PERCENT, KEYS);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            System.out.printf("threads=%-3d ops/s=%d%n", threads, run(threads));
+        }
+        Main.closeStorage();
+    }
+
+    private static long run(int threads) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        long deadline = System.currentTimeMillis() + DURATION_MS;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.currentTimeMillis() < deadline) {
+                    int key = random.nextInt(KEYS);
+                    if (random.nextInt(100) < READ_PERCENT) {
+                        Main.handleRequest("get", path(key), null);
+                    } else {
+                        Main.handleRequest("set", path(key), new JsonPrimitive(random.nextInt()));
+                    }
+                    operations.increment();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() * 1000 / DURATION_MS;
+    }
+
+    private static JsonArray path(int key) {
+        JsonArray path = new JsonArray();
+        path.add("key" + key);
+        path.add("stats");
+        path.add("count");
+        return path;
+    }
+}
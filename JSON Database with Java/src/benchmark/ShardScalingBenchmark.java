@@ -0,0 +1,120 @@
+package benchmark;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+public class ShardScalingBenchmark {
+
+    private static final String ADDRESS = "127.0.0.1";
+    private static final int ROUTER_PORT = 24000;
+    private static final int FIRST_SHARD_PORT = 24001;
+    private static final int KEY_SPACE = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 5;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        File dataRoot = Files.createTempDirectory("shard-benchmark").toFile();
+
+        System.out.printf("%-8s %14s%n", "shards", "ops/s");
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            List<Process> processes = new ArrayList<>();
+            List<Integer> ports = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                int port = FIRST_SHARD_PORT + i;
+                ports.add(port);
+                processes.add(start("server.Main", "-Djsondb.port=" + port,
+                        "-Djsondb.dataDir=" + new File(dataRoot, shards + "-" + i).getPath()));
+                awaitPort(port);
+            }
+            String shardList = ports.stream().map(String::valueOf).collect(Collectors.joining(","));
+            processes.add(start("server.Router", "-Djsondb.port=" + ROUTER_PORT, "-Djsondb.shards=" + shardList));
+            awaitPort(ROUTER_PORT);
+
+            long operations = run(clients, seconds);
+            System.out.printf("%-8d %14d%n", shards, operations / seconds);
+
+            try (Socket socket = new Socket(InetAddress.getByName(ADDRESS), ROUTER_PORT)) {
+                new DataOutputStream(socket.getOutputStream()).writeUTF("{\"type\":\"exit\"}");
+                new DataInputStream(socket.getInputStream()).readUTF();
+            }
+            for (Process process : processes) {
+                process.waitFor();
+            }
+        }
+    }
+
+    private static long run(int clients, long seconds) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < clients; t++) {
+            Thread thread = new Thread(() -> {
+                try (Socket socket = new Socket(InetAddress.getByName(ADDRESS), ROUTER_PORT)) {
+                    socket.setTcpNoDelay(true);
+                    DataInputStream input = new DataInputStream(socket.getInputStream());
+                    DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+                    output.writeUTF("{\"type\":\"session\",\"framing\":\"length\"}");
+                    input.readUTF();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        int key = random.nextInt(KEY_SPACE);
+                        String request = random.nextBoolean()
+                                ? "{\"type\":\"set\",\"key\":\"key-" + key + "\",\"value\":{\"n\":" + key + "}}"
+                                : "{\"type\":\"get\",\"key\":\"key-" + key + "\"}";
+                        byte[] bytes = request.getBytes(StandardCharsets.UTF_8);
+                        output.writeInt(bytes.length);
+                        output.write(bytes);
+                        output.flush();
+                        input.readFully(new byte[input.readInt()]);
+                        operations.increment();
+                    }
+                } catch (IOException e) {
+                    System.out.println("Client exception: " + e.getMessage());
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return operations.sum();
+    }
+
+    private static Process start(String mainClass, String... properties) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(List.of(properties));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass);
+        return new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private static void awaitPort(int port) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try {
+                new Socket(InetAddress.getByName(ADDRESS), port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IllegalStateException("Port " + port + " did not open");
+    }
+}
@@ -2,18 +2,36 @@ package client;
 
 import com.beust.jcommander.JCommander;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 public class Main {
+    private static final Gson gson = new Gson();
+    private static final int MAX_LEGACY_FRAME_BYTES = 65535;
+    private static final int COMPRESSED_FLAG = 0x80000000;
+    private static final int BUSY_RETRIES = 5;
+    private static final long BUSY_BACKOFF_MS = 10;
+
     public static void main(String[] args) {
         Request requestArgs = new Request();
         JCommander jCommander = JCommander.newBuilder()
@@ -23,7 +41,6 @@ public class Main {
 
         String address = "127.0.0.1";
         int port = 23456;
-        Gson gson = new Gson();
         String requestJson;
 
         try (Socket socket = new Socket(InetAddress.getByName(address), port);
@@ -31,6 +48,22 @@ public class Main {
              DataOutputStream output = new DataOutputStream(socket.getOutputStream())) {
             System.out.println("Client started!");
 
+            if (requestArgs.getBatchFileName() != null) {
+                List<String> requests;
+                try {
+                    requests = Files.readAllLines(Paths.get("src/client/data/" + requestArgs.getBatchFileName()));
+                } catch (IOException e) {
+                    System.out.println("Cannot read file: " + e.getMessage());
+                    return;
+                }
+                runBatch(input, output, requests);
+                return;
+            }
+            if (requestArgs.isInteractive()) {
+                runInteractive(input, output);
+                return;
+            }
+
             if (requestArgs.getFileName() != null) {
                 try {
                     String stringPath = "src/client/data/" + requestArgs.getFileName();
@@ -53,12 +86,174 @@ public class Main {
                 requestJson = gson.toJson(jsonRequest);
             }
 
+            if (requestJson.getBytes(StandardCharsets.UTF_8).length > MAX_LEGACY_FRAME_BYTES) {
+                openSession(input, output);
+                System.out.println("Sent: " + requestJson.length() + " characters");
+                System.out.println("Received: " + exchange(input, output, requestJson));
+                return;
+            }
+
             output.writeUTF(requestJson);
             System.out.println("Sent: " + requestJson);
             String receivedMsg = input.readUTF();
+            for (int attempt = 0; attempt < BUSY_RETRIES && isBusy(receivedMsg); attempt++) {
+                backOff(attempt);
+                try (Socket retrySocket = new Socket(InetAddress.getByName(address), port);
+                     DataInputStream retryInput = new DataInputStream(retrySocket.getInputStream());
+                     DataOutputStream retryOutput = new DataOutputStream(retrySocket.getOutputStream())) {
+                    retryOutput.writeUTF(requestJson);
+                    receivedMsg = retryInput.readUTF();
+                }
+            }
             System.out.println("Received: " + receivedMsg);
         } catch (IOException e) {
             System.out.println("Client exception: " + e.getMessage());
         }
     }
+
+    private static void openSession(DataInputStream input, DataOutputStream output) throws IOException {
+        JsonObject sessionRequest = new JsonObject();
+        sessionRequest.addProperty("type", "session");
+        sessionRequest.addProperty("framing", "length");
+        sessionRequest.addProperty("compression", "deflate");
+        output.writeUTF(gson.toJson(sessionRequest));
+        output.flush();
+        System.out.println("Session: " + input.readUTF());
+    }
+
+    private static void writeFrame(DataOutputStream output, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        synchronized (output) {
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.flush();
+        }
+    }
+
+    private static String exchange(DataInputStream input, DataOutputStream output, String requestJson) throws IOException {
+        writeFrame(output, requestJson);
+        String received = readFrame(input);
+        for (int attempt = 0; attempt < BUSY_RETRIES && isBusy(received); attempt++) {
+            backOff(attempt);
+            writeFrame(output, requestJson);
+            received = readFrame(input);
+        }
+        return received;
+    }
+
+    private static boolean isBusy(String responseJson) {
+        JsonObject response = gson.fromJson(responseJson, JsonObject.class);
+        return response.has("response") && response.get("response").getAsString().equals("BUSY");
+    }
+
+    private static void backOff(int attempt) {
+        long ceiling = BUSY_BACKOFF_MS << Math.min(attempt, 6);
+        try {
+            Thread.sleep(1 + ThreadLocalRandom.current().nextLong(ceiling));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String readFrame(DataInputStream input) throws IOException {
+        int header = input.readInt();
+        byte[] bytes = new byte[header & ~COMPRESSED_FLAG];
+        input.readFully(bytes);
+        if ((header & COMPRESSED_FLAG) != 0) {
+            bytes = inflate(bytes);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 4);
+        byte[] buffer = new byte[64 * 1024];
+        try {
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new IOException("Truncated compressed frame");
+                }
+                output.write(buffer, 0, inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return output.toByteArray();
+    }
+
+    private static JsonObject tag(String requestLine, int id) {
+        JsonObject request = gson.fromJson(requestLine, JsonObject.class);
+        if (!request.has("id")) {
+            request.addProperty("id", id);
+        }
+        return request;
+    }
+
+    private static void runBatch(DataInputStream input, DataOutputStream output, List<String> requests) throws IOException {
+        List<String> lines = requests.stream()
+                .filter(line -> !line.isBlank())
+                .toList();
+        openSession(input, output);
+
+        Map<JsonElement, String> pending = new ConcurrentHashMap<>();
+        Map<JsonElement, Integer> attempts = new HashMap<>();
+        Thread sender = new Thread(() -> {
+            try {
+                for (int i = 0; i < lines.size(); i++) {
+                    JsonObject tagged = tag(lines.get(i), i + 1);
+                    String request = gson.toJson(tagged);
+                    pending.put(tagged.get("id"), request);
+                    writeFrame(output, request);
+                    System.out.println("Sent: " + request);
+                }
+            } catch (IOException e) {
+                System.out.println("Client exception: " + e.getMessage());
+            }
+        });
+        sender.start();
+
+        int received = 0;
+        while (received < lines.size()) {
+            String responseJson = readFrame(input);
+            JsonElement id = gson.fromJson(responseJson, JsonObject.class).get("id");
+            int attempt = id == null ? BUSY_RETRIES : attempts.getOrDefault(id, 0);
+            if (isBusy(responseJson) && attempt < BUSY_RETRIES && pending.containsKey(id)) {
+                attempts.put(id, attempt + 1);
+                backOff(attempt);
+                writeFrame(output, pending.get(id));
+                continue;
+            }
+            System.out.println("Received: " + responseJson);
+            received++;
+        }
+        try {
+            sender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runInteractive(DataInputStream input, DataOutputStream output) throws IOException {
+        openSession(input, output);
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in));
+        int id = 0;
+        String line;
+        while ((line = console.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonObject request = tag(line, ++id);
+            String requestJson = gson.toJson(request);
+            System.out.println("Sent: " + requestJson);
+            System.out.println("Received: " + exchange(input, output, requestJson));
+            if (request.get("type").getAsString().equals("exit")) {
+                break;
+            }
+        }
+    }
 }
@@ -15,6 +15,12 @@ public class Request {
     @Parameter(names = "-in", description = "File name with the request")
     private String fileName;
 
+    @Parameter(names = "-batch", description = "File name with requests, one per line, sent over one session")
+    private String batchFileName;
+
+    @Parameter(names = "-i", description = "Interactive session reading requests from standard input")
+    private boolean interactive;
+
     public String getType() {
         return type;
     }
@@ -30,4 +36,12 @@ public class Request {
     public String getFileName() {
         return fileName;
     }
+
+    public String getBatchFileName() {
+        return batchFileName;
+    }
+
+    public boolean isInteractive() {
+        return interactive;
+    }
 }
@@ -0,0 +1,33 @@
+package server;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+public final class AtomicFile {
+
+    public interface Content {
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    private AtomicFile() {
+    }
+
+    public static long write(File file, Content content) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        long size;
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            BufferedOutputStream output = new BufferedOutputStream(stream, 64 * 1024);
+            content.writeTo(output);
+            output.flush();
+            stream.getFD().sync();
+            size = stream.getChannel().size();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    public static long write(File file, boolean compressed, Content content) throws IOException {
+        return write(file, compressed ? output -> Compression.gzip(output, content) : content);
+    }
+}
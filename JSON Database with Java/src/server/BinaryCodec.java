@@ -0,0 +1,262 @@
+package server;
+
+import com.google.gson.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+public final class BinaryCodec {
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_INTEGER = 3;
+    private static final int TAG_NUMBER = 4;
+    private static final int TAG_STRING = 5;
+    private static final int TAG_ARRAY = 6;
+    private static final int TAG_OBJECT = 7;
+    private static final int TAG_COMPRESSED = 8;
+
+    private BinaryCodec() {
+    }
+
+    public static byte[] encode(JsonElement element) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        write(element, output);
+        return output.toByteArray();
+    }
+
+    public static byte[] pack(byte[] encoded, int threshold) {
+        if (threshold <= 0 || encoded.length < threshold) {
+            return encoded;
+        }
+        byte[] deflated = Compression.deflate(encoded, 0, encoded.length);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(deflated.length + 6);
+        output.write(TAG_COMPRESSED);
+        writeVarLong(output, encoded.length);
+        output.writeBytes(deflated);
+        return output.size() < encoded.length ? output.toByteArray() : encoded;
+    }
+
+    public static byte[] unpack(byte[] stored) {
+        if (stored.length == 0 || (stored[0] & 0xFF) != TAG_COMPRESSED) {
+            return stored;
+        }
+        Cursor cursor = new Cursor(stored, 1);
+        int length = (int) cursor.readVarLong();
+        return Compression.inflate(stored, cursor.position, stored.length - cursor.position, length, length);
+    }
+
+    private static void write(JsonElement element, ByteArrayOutputStream output) {
+        if (element == null || element.isJsonNull()) {
+            output.write(TAG_NULL);
+        } else if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                output.write(primitive.getAsBoolean() ? TAG_TRUE : TAG_FALSE);
+            } else if (primitive.isNumber()) {
+                String text = primitive.getAsNumber().toString();
+                Long integer = parseLong(text);
+                if (integer != null) {
+                    output.write(TAG_INTEGER);
+                    writeVarLong(output, (integer << 1) ^ (integer >> 63));
+                } else {
+                    output.write(TAG_NUMBER);
+                    writeString(output, text);
+                }
+            } else {
+                output.write(TAG_STRING);
+                writeString(output, primitive.getAsString());
+            }
+        } else {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int count;
+            if (element.isJsonArray()) {
+                JsonArray array = element.getAsJsonArray();
+                count = array.size();
+                for (JsonElement item : array) {
+                    write(item, body);
+                }
+                output.write(TAG_ARRAY);
+            } else {
+                JsonObject object = element.getAsJsonObject();
+                count = object.size();
+                for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                    writeString(body, entry.getKey());
+                    write(entry.getValue(), body);
+                }
+                output.write(TAG_OBJECT);
+            }
+            writeVarLong(output, body.size());
+            writeVarLong(output, count);
+            output.writeBytes(body.toByteArray());
+        }
+    }
+
+    private static Long parseLong(String text) {
+        if (text.isEmpty() || text.length() > 19) {
+            return null;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!(c >= '0' && c <= '9') && !(i == 0 && c == '-' && text.length() > 1)) {
+                return null;
+            }
+        }
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream output, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(output, bytes.length);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream output, long value) {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    private static final class Cursor {
+        private final byte[] data;
+        private int position;
+
+        Cursor(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        int readByte() {
+            return data[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            while (true) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+                shift += 7;
+            }
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+
+    public static JsonElement decode(byte[] data) {
+        return decode(data, 0);
+    }
+
+    public static JsonElement decode(byte[] data, int offset) {
+        return read(new Cursor(data, offset));
+    }
+
+    private static JsonElement read(Cursor cursor) {
+        int tag = cursor.readByte();
+        switch (tag) {
+            case TAG_NULL -> {
+                return JsonNull.INSTANCE;
+            }
+            case TAG_FALSE -> {
+                return new JsonPrimitive(false);
+            }
+            case TAG_TRUE -> {
+                return new JsonPrimitive(true);
+            }
+            case TAG_INTEGER -> {
+                long zigzag = cursor.readVarLong();
+                return new JsonPrimitive((zigzag >>> 1) ^ -(zigzag & 1));
+            }
+            case TAG_NUMBER -> {
+                return JsonParser.parseString(cursor.readString());
+            }
+            case TAG_STRING -> {
+                return new JsonPrimitive(cursor.readString());
+            }
+            case TAG_ARRAY -> {
+                cursor.readVarLong();
+                long count = cursor.readVarLong();
+                JsonArray array = new JsonArray();
+                for (long i = 0; i < count; i++) {
+                    array.add(read(cursor));
+                }
+                return array;
+            }
+            case TAG_OBJECT -> {
+                cursor.readVarLong();
+                long count = cursor.readVarLong();
+                JsonObject object = new JsonObject();
+                for (long i = 0; i < count; i++) {
+                    String key = cursor.readString();
+                    object.add(key, read(cursor));
+                }
+                return object;
+            }
+            default -> throw new JsonParseException("Unknown binary tag " + tag);
+        }
+    }
+
+    private static void skip(Cursor cursor) {
+        int tag = cursor.readByte();
+        switch (tag) {
+            case TAG_NULL, TAG_FALSE, TAG_TRUE -> {
+            }
+            case TAG_INTEGER -> cursor.readVarLong();
+            case TAG_NUMBER, TAG_STRING -> {
+                int length = (int) cursor.readVarLong();
+                cursor.position += length;
+            }
+            case TAG_ARRAY, TAG_OBJECT -> {
+                int bodyLength = (int) cursor.readVarLong();
+                cursor.readVarLong();
+                cursor.position += bodyLength;
+            }
+            default -> throw new JsonParseException("Unknown binary tag " + tag);
+        }
+    }
+
+    public static int find(byte[] data, JsonArray keyPath, int fromIndex) {
+        Cursor cursor = new Cursor(data, 0);
+        for (int i = fromIndex; i < keyPath.size(); i++) {
+            if (cursor.readByte() != TAG_OBJECT) {
+                return -1;
+            }
+            cursor.readVarLong();
+            long count = cursor.readVarLong();
+            byte[] segment = keyPath.get(i).getAsString().getBytes(StandardCharsets.UTF_8);
+            boolean found = false;
+            for (long entry = 0; entry < count; entry++) {
+                int keyLength = (int) cursor.readVarLong();
+                boolean matches = Arrays.equals(data, cursor.position, cursor.position + keyLength,
+                        segment, 0, segment.length);
+                cursor.position += keyLength;
+                if (matches) {
+                    found = true;
+                    break;
+                }
+                skip(cursor);
+            }
+            if (!found) {
+                return -1;
+            }
+        }
+        return cursor.position;
+    }
+}
@@ -0,0 +1,121 @@
+package server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class BinaryStorage implements Storage {
+
+    private static final int MAGIC = 0x4A444231;
+
+    private final Map<String, byte[]> database = new ConcurrentHashMap<>();
+    private final int valueThreshold;
+    private final boolean compressSnapshot;
+
+    public BinaryStorage(int valueThreshold, boolean compressSnapshot) {
+        this.valueThreshold = valueThreshold;
+        this.compressSnapshot = compressSnapshot;
+    }
+
+    @Override
+    public JsonElement get(String rootKey) {
+        byte[] encoded = database.get(rootKey);
+        return encoded == null ? null : BinaryCodec.decode(BinaryCodec.unpack(encoded));
+    }
+
+    @Override
+    public JsonElement get(JsonArray keyPath) {
+        byte[] stored = database.get(keyPath.get(0).getAsString());
+        if (stored == null) {
+            return null;
+        }
+        byte[] encoded = BinaryCodec.unpack(stored);
+        int offset = BinaryCodec.find(encoded, keyPath, 1);
+        return offset < 0 ? null : BinaryCodec.decode(encoded, offset);
+    }
+
+    @Override
+    public Supplier<JsonElement> capture(String rootKey) {
+        byte[] encoded = database.get(rootKey);
+        return () -> encoded == null ? null : BinaryCodec.decode(BinaryCodec.unpack(encoded));
+    }
+
+    @Override
+    public void put(String rootKey, JsonElement value) {
+        database.put(rootKey, BinaryCodec.pack(BinaryCodec.encode(value), valueThreshold));
+    }
+
+    @Override
+    public boolean remove(String rootKey) {
+        return database.remove(rootKey) != null;
+    }
+
+    @Override
+    public boolean containsKey(String rootKey) {
+        return database.containsKey(rootKey);
+    }
+
+    @Override
+    public int size() {
+        return database.size();
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        database.keySet().forEach(action);
+    }
+
+    @Override
+    public String getSnapshotFileName() {
+        return "db.bin";
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        Map<String, byte[]> captured = new HashMap<>(database);
+        return file -> AtomicFile.write(file, compressSnapshot, stream -> {
+            DataOutputStream output = new DataOutputStream(stream);
+            output.writeInt(MAGIC);
+            for (Map.Entry<String, byte[]> entry : captured.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                output.writeInt(key.length);
+                output.write(key);
+                output.writeInt(entry.getValue().length);
+                output.write(entry.getValue());
+            }
+            output.flush();
+        });
+    }
+
+    @Override
+    public void readSnapshot(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream input = new DataInputStream(Compression.open(file))) {
+            if (input.readInt() != MAGIC) {
+                throw new IOException("Not a binary database snapshot");
+            }
+            while (true) {
+                int keyLength;
+                try {
+                    keyLength = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] key = new byte[keyLength];
+                input.readFully(key);
+                byte[] value = new byte[input.readInt()];
+                input.readFully(value);
+                database.put(new String(key, StandardCharsets.UTF_8), value);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package server;
+
+import com.google.gson.JsonObject;
+
+import java.io.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+public final class Compression {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Config.COMPRESSION_LEVEL));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private static final LongAdder inputBytes = new LongAdder();
+    private static final LongAdder deflatedBytes = new LongAdder();
+
+    private Compression() {
+    }
+
+    public static byte[] deflate(byte[] data, int offset, int length) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, length / 4));
+        byte[] buffer = new byte[Math.min(BUFFER_SIZE, Math.max(64, length))];
+        while (!deflater.finished()) {
+            output.write(buffer, 0, deflater.deflate(buffer));
+        }
+        inputBytes.add(length);
+        deflatedBytes.add(output.size());
+        return output.toByteArray();
+    }
+
+    public static byte[] inflate(byte[] data, int offset, int length, int sizeHint, int maxSize) {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+        int expected = Math.max(64, Math.min(sizeHint, maxSize));
+        ByteArrayOutputStream output = new ByteArrayOutputStream(expected);
+        byte[] buffer = new byte[Math.min(BUFFER_SIZE, expected)];
+        try {
+            while (!inflater.finished()) {
+                int inflated = inflater.inflate(buffer);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated compressed data");
+                }
+                if (inflated > maxSize - output.size()) {
+                    throw new UncheckedIOException(new IOException("Compressed data inflates past " + maxSize + " bytes"));
+                }
+                output.write(buffer, 0, inflated);
+            }
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("Corrupt compressed data: " + e.getMessage(), e));
+        }
+        return output.toByteArray();
+    }
+
+    public static void gzip(OutputStream output, AtomicFile.Content content) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(output, BUFFER_SIZE) {
+            {
+                def.setLevel(Config.COMPRESSION_LEVEL);
+            }
+        };
+        content.writeTo(gzip);
+        gzip.finish();
+    }
+
+    public static InputStream open(File file) throws IOException {
+        BufferedInputStream input = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        input.mark(2);
+        int magic = input.read() | input.read() << 8;
+        input.reset();
+        return magic == GZIPInputStream.GZIP_MAGIC ? new GZIPInputStream(input, BUFFER_SIZE) : input;
+    }
+
+    public static JsonObject stats() {
+        JsonObject stats = new JsonObject();
+        long input = inputBytes.sum();
+        long deflated = deflatedBytes.sum();
+        stats.addProperty("inputBytes", input);
+        stats.addProperty("deflatedBytes", deflated);
+        stats.addProperty("ratio", input == 0 ? 0.0 : Math.round(100.0 * deflated / input) / 100.0);
+        return stats;
+    }
+}
@@ -0,0 +1,79 @@
+package server;
+
+import com.google.gson.JsonObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetNanos;
+    private final double backoff;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+    private long lastDecrease = System.nanoTime();
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetMillis, double backoff) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        this.backoff = backoff;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    public void release(long latencyNanos) {
+        int outstanding = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (latencyNanos > targetNanos) {
+                long now = System.nanoTime();
+                if (now - lastDecrease >= targetNanos) {
+                    limit = Math.max(minLimit, limit * backoff);
+                    lastDecrease = now;
+                }
+            } else if (outstanding * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public JsonObject stats() {
+        JsonObject stats = new JsonObject();
+        stats.addProperty("limit", getLimit());
+        stats.addProperty("inFlight", getInFlight());
+        stats.addProperty("rejected", getRejected());
+        return stats;
+    }
+}
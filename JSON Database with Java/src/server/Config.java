@@ -0,0 +1,69 @@
+package server;
+
+public final class Config {
+
+    public static final int PORT = Integer.getInteger("jsondb.port", 23456);
+    public static final String SHARDS = System.getProperty("jsondb.shards", "");
+    public static final int RING_VIRTUAL_NODES = Integer.getInteger("jsondb.ring.virtualNodes", 128);
+    public static final String REPLICATION_LEADER = System.getProperty("jsondb.replication.leader", "");
+    public static final int REPLICATION_LOG_SIZE = Integer.getInteger("jsondb.replication.logSize", 100_000);
+    public static final long REPLICATION_POLL_MS = Long.getLong("jsondb.replication.pollMs", 10);
+    public static final int REPLICATION_BATCH = Integer.getInteger("jsondb.replication.batch", 1000);
+    public static final String READ_CONSISTENCY = System.getProperty("jsondb.replication.readConsistency", "any");
+    public static final long REPLICATION_MAX_LAG_MS = Long.getLong("jsondb.replication.maxLagMs", 1000);
+    public static final int CACHE_ENTRIES = Integer.getInteger("jsondb.cache.entries", 10_000);
+    public static final int SCAN_MAX_LIMIT = Integer.getInteger("jsondb.scan.maxLimit", 1000);
+    public static final int WATCH_BUFFER = Integer.getInteger("jsondb.watch.buffer", 1024);
+    public static final Subscriber.Overflow WATCH_OVERFLOW =
+            Subscriber.Overflow.valueOf(System.getProperty("jsondb.watch.overflow", "drop").toUpperCase());
+    public static final Log.Level LOG_LEVEL = Log.Level.valueOf(System.getProperty("jsondb.log.level", "info").toUpperCase());
+    public static final double LOG_SAMPLE_RATE = Double.parseDouble(System.getProperty("jsondb.log.sampleRate", "1.0"));
+    public static final int LOG_QUEUE = Integer.getInteger("jsondb.log.queue", 8192);
+    public static final long TTL_TICK_MS = Long.getLong("jsondb.ttl.tickMs", 10);
+    public static final String DATA_DIR = System.getProperty("jsondb.dataDir", "src/server/data");
+    public static final int LOCK_STRIPES = Integer.getInteger("jsondb.lockStripes", 64);
+    public static final int BACKLOG = Integer.getInteger("jsondb.backlog", 50);
+    public static final int MAX_CONNECTIONS = Integer.getInteger("jsondb.maxConnections", 16_384);
+    public static final int ADMISSION_QUEUE = Integer.getInteger("jsondb.admission.queue", 1024);
+    public static final int ADMISSION_PIPELINE = Integer.getInteger("jsondb.admission.pipeline", 64);
+    public static final int ADMISSION_PER_CONNECTION = Integer.getInteger("jsondb.admission.perConnection", 256);
+    public static final int ADMISSION_LIMIT = Integer.getInteger("jsondb.admission.limit", 256);
+    public static final int ADMISSION_MIN_LIMIT = Integer.getInteger("jsondb.admission.minLimit", 8);
+    public static final int ADMISSION_MAX_LIMIT = Integer.getInteger("jsondb.admission.maxLimit", 4096);
+    public static final long ADMISSION_TARGET_LATENCY_MS = Long.getLong("jsondb.admission.targetLatencyMs", 50);
+    public static final double ADMISSION_BACKOFF = Double.parseDouble(System.getProperty("jsondb.admission.backoff", "0.9"));
+    public static final int MAX_FRAME_BYTES = Integer.getInteger("jsondb.maxFrameBytes", 64 * 1024 * 1024);
+    public static final String STORAGE_ENGINE = System.getProperty("jsondb.storage.engine", "heap");
+    public static final long MAPPED_SEGMENT_BYTES = Long.getLong("jsondb.mapped.segmentBytes", 256L * 1024 * 1024);
+    public static final String STORAGE_ENCODING = System.getProperty("jsondb.storage.encoding", "json");
+    public static final String PERSISTENCE = System.getProperty("jsondb.persistence", "file");
+    public static final WriteAheadLog.SyncPolicy WAL_SYNC =
+            WriteAheadLog.SyncPolicy.valueOf(System.getProperty("jsondb.wal.sync", "always").toUpperCase());
+    public static final long WAL_SYNC_INTERVAL_MS = Long.getLong("jsondb.wal.syncIntervalMs", 10);
+    public static final long GROUP_COMMIT_WINDOW_MS = Long.getLong("jsondb.groupCommit.windowMs", 0);
+    public static final int GROUP_COMMIT_MAX_BATCH = Integer.getInteger("jsondb.groupCommit.maxBatch", 1024);
+    public static final int COMPRESSION_LEVEL = Integer.getInteger("jsondb.compression.level", 1);
+    public static final int COMPRESSION_VALUE_THRESHOLD = Integer.getInteger("jsondb.compression.valueThreshold", 0);
+    public static final int COMPRESSION_RESPONSE_THRESHOLD = Integer.getInteger("jsondb.compression.responseThreshold", 8192);
+    public static final boolean SNAPSHOT_COMPRESSED = Boolean.getBoolean("jsondb.snapshot.compressed");
+    public static final long SNAPSHOT_INTERVAL_MS = Long.getLong("jsondb.snapshot.intervalMs", 60_000);
+
+    private Config() {
+    }
+
+    public static boolean isMappedStorage() {
+        return STORAGE_ENGINE.equalsIgnoreCase("mapped");
+    }
+
+    public static boolean isBinaryStorage() {
+        return STORAGE_ENCODING.equalsIgnoreCase("binary");
+    }
+
+    public static boolean isFollower() {
+        return !REPLICATION_LEADER.isBlank();
+    }
+
+    public static boolean isWalEnabled() {
+        return PERSISTENCE.equalsIgnoreCase("wal");
+    }
+}
@@ -0,0 +1,599 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+public class EventLoop {
+
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    private static final int EVENT_BATCH = 64;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers;
+    private final Function<JsonObject, Response> handler;
+    private final Watchers watchers;
+    private final Gson gson = new Gson();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ConcurrencyLimiter limiter = new ConcurrencyLimiter(Config.ADMISSION_LIMIT, Config.ADMISSION_MIN_LIMIT,
+            Config.ADMISSION_MAX_LIMIT, Config.ADMISSION_TARGET_LATENCY_MS, Config.ADMISSION_BACKOFF);
+    private final LongAdder busyConnection = new LongAdder();
+    private final LongAdder busyQueue = new LongAdder();
+    private final LongAdder pausedReads = new LongAdder();
+    private int connections = 0;
+    private boolean acceptPaused = false;
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private volatile boolean stopRequested = false;
+
+    private record Frame(byte[] data, boolean legacy, boolean compressed, JsonObject request, long admittedAt, String busy) {
+
+        Frame(byte[] data, boolean legacy, boolean compressed, JsonObject request) {
+            this(data, legacy, compressed, request, 0, null);
+        }
+
+        Frame admitted() {
+            return new Frame(data, legacy, compressed, request, System.nanoTime(), null);
+        }
+
+        Frame rejected(String reason) {
+            return new Frame(data, legacy, compressed, request, 0, reason);
+        }
+    }
+
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        private final Queue<Frame> inbox = new ArrayDeque<>();
+        private final Queue<ByteBuffer> outbox = new ArrayDeque<>();
+        private boolean scheduled = false;
+        private boolean firstFrame = true;
+        private boolean session = false;
+        private boolean lengthFraming = false;
+        private boolean binaryEncoding = false;
+        private boolean compression = false;
+        private boolean closeAfterWrite = false;
+        private boolean readPaused = false;
+        private Subscriber subscriber = null;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+    public EventLoop(String address, int port, int backlog, ExecutorService workers,
+                     Function<JsonObject, Response> handler, Watchers watchers) throws IOException {
+        this.workers = workers;
+        this.handler = handler;
+        this.watchers = watchers;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(address, port), backlog);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public void stop() {
+        stopRequested = true;
+        selector.wakeup();
+    }
+
+    public void run() throws IOException {
+        while (true) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                try {
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    }
+                } catch (IOException e) {
+                    close(key);
+                }
+            }
+            if (stopRequested && serverChannel.isOpen()) {
+                serverChannel.close();
+            }
+            if (stopRequested && inFlight.get() == 0 && !hasPendingOutput()) {
+                break;
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            close(key);
+        }
+        selector.close();
+    }
+
+    private synchronized void accept() throws IOException {
+        SocketChannel channel;
+        while (connections < Config.MAX_CONNECTIONS && (channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(channel, key));
+            connections++;
+        }
+        if (connections >= Config.MAX_CONNECTIONS && !acceptPaused) {
+            serverChannel.keyFor(selector).interestOps(0);
+            acceptPaused = true;
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        int read = connection.channel.read(connection.readBuffer);
+        if (read < 0) {
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+            synchronized (connection) {
+                if (!connection.scheduled && connection.outbox.isEmpty()) {
+                    close(connection.key);
+                } else {
+                    connection.closeAfterWrite = true;
+                }
+            }
+            return;
+        }
+        bytesIn.add(read);
+
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+        int required = 0;
+        while (true) {
+            if (connection.lengthFraming) {
+                if (buffer.remaining() < FrameCodec.LENGTH_HEADER_BYTES) {
+                    required = FrameCodec.LENGTH_HEADER_BYTES;
+                    break;
+                }
+                int header = buffer.getInt(buffer.position());
+                boolean compressed = connection.compression && (header & FrameCodec.COMPRESSED_FLAG) != 0;
+                int length = compressed ? header & ~FrameCodec.COMPRESSED_FLAG : header;
+                if (length < 0 || length > Config.MAX_FRAME_BYTES) {
+                    throw new IOException("Frame of " + length + " bytes exceeds the limit");
+                }
+                required = length + FrameCodec.LENGTH_HEADER_BYTES;
+                if (buffer.remaining() < required) {
+                    break;
+                }
+                buffer.getInt();
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                enqueue(connection, new Frame(payload, false, compressed, null));
+            } else {
+                if (buffer.remaining() < FrameCodec.LEGACY_HEADER_BYTES) {
+                    required = FrameCodec.LEGACY_HEADER_BYTES;
+                    break;
+                }
+                required = (buffer.getShort(buffer.position()) & 0xFFFF) + FrameCodec.LEGACY_HEADER_BYTES;
+                if (buffer.remaining() < required) {
+                    break;
+                }
+                byte[] frame = new byte[required];
+                buffer.get(frame);
+                JsonObject request = connection.firstFrame ? handshake(connection, frame) : null;
+                connection.firstFrame = false;
+                enqueue(connection, new Frame(frame, true, false, request));
+            }
+        }
+        buffer.compact();
+        if (buffer.capacity() < required) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2));
+            buffer.flip();
+            larger.put(buffer);
+            connection.readBuffer = larger;
+        }
+    }
+
+    private JsonObject handshake(Connection connection, byte[] frame) {
+        try {
+            JsonObject request = FrameCodec.parseLegacy(frame);
+            if (request.has("type") && request.get("type").getAsString().equals("session")) {
+                connection.session = true;
+                connection.binaryEncoding = request.has("encoding")
+                        && request.get("encoding").getAsString().equals("binary");
+                connection.compression = request.has("compression")
+                        && request.get("compression").getAsString().equals("deflate");
+                connection.lengthFraming = connection.binaryEncoding || connection.compression || request.has("framing")
+                        && request.get("framing").getAsString().equals("length");
+            }
+            return request;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void enqueue(Connection connection, Frame frame) {
+        boolean rejected = false;
+        synchronized (connection) {
+            if (connection.closeAfterWrite) {
+                return;
+            }
+            connection.inbox.add(admit(connection, frame));
+            if (connection.inbox.size() >= Config.ADMISSION_PIPELINE && !connection.readPaused) {
+                connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+                connection.readPaused = true;
+                pausedReads.increment();
+            }
+            if (!connection.scheduled) {
+                connection.scheduled = true;
+                inFlight.incrementAndGet();
+                try {
+                    workers.execute(() -> drain(connection));
+                } catch (RejectedExecutionException e) {
+                    Frame queued = connection.inbox.poll();
+                    release(connection, queued, false);
+                    connection.inbox.add(queued.rejected("Request queue is full"));
+                    busyQueue.increment();
+                    rejected = true;
+                }
+            }
+        }
+        if (rejected) {
+            drain(connection);
+        }
+    }
+
+    private Frame admit(Connection connection, Frame frame) {
+        if (frame.request() != null && connection.session) {
+            return frame;
+        }
+        if (connection.outstanding.incrementAndGet() > Config.ADMISSION_PER_CONNECTION) {
+            connection.outstanding.decrementAndGet();
+            busyConnection.increment();
+            return frame.rejected("Too many requests on this connection");
+        }
+        if (!limiter.tryAcquire()) {
+            connection.outstanding.decrementAndGet();
+            return frame.rejected("Server is overloaded");
+        }
+        return frame.admitted();
+    }
+
+    private void release(Connection connection, Frame frame, boolean completed) {
+        if (frame.admittedAt() == 0) {
+            return;
+        }
+        connection.outstanding.decrementAndGet();
+        if (completed) {
+            limiter.release(System.nanoTime() - frame.admittedAt());
+        } else {
+            limiter.cancel();
+        }
+    }
+
+    private void drain(Connection connection) {
+        boolean drained = false;
+        try {
+            while (true) {
+                Frame frame;
+                synchronized (connection) {
+                    frame = connection.inbox.poll();
+                    if (connection.readPaused && !connection.closeAfterWrite
+                            && connection.inbox.size() <= Config.ADMISSION_PIPELINE / 2 && connection.key.isValid()) {
+                        connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+                        connection.readPaused = false;
+                    }
+                    if (frame == null) {
+                        connection.scheduled = false;
+                        drained = true;
+                        if (connection.closeAfterWrite && connection.outbox.isEmpty()) {
+                            close(connection.key);
+                        }
+                        return;
+                    }
+                }
+                try {
+                    process(connection, frame);
+                } finally {
+                    release(connection, frame, true);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.out.println("Error processing request: " + e.getMessage());
+        } finally {
+            if (!drained) {
+                synchronized (connection) {
+                    connection.scheduled = false;
+                    connection.closeAfterWrite = true;
+                    connection.inbox.forEach(discarded -> release(connection, discarded, false));
+                    connection.inbox.clear();
+                    if (connection.outbox.isEmpty()) {
+                        close(connection.key);
+                    }
+                }
+            }
+            inFlight.decrementAndGet();
+            selector.wakeup();
+        }
+    }
+
+    private void process(Connection connection, Frame frame) {
+        Response response;
+        JsonObject requestJson = null;
+        String type = null;
+        List<String> watchPath = null;
+        try {
+            if (frame.request() != null) {
+                requestJson = frame.request();
+            } else if (frame.legacy()) {
+                requestJson = FrameCodec.parseLegacy(frame.data());
+            } else {
+                byte[] payload = frame.compressed() ? FrameCodec.decompress(frame.data()) : frame.data();
+                requestJson = connection.binaryEncoding ? FrameCodec.parseBinary(payload) : FrameCodec.parse(payload);
+            }
+            type = requestJson.get("type").getAsString();
+            if (frame.busy() != null) {
+                response = new Response("BUSY", frame.busy());
+                response.setId(requestJson.get("id"));
+            } else if (frame.request() != null && connection.session) {
+                response = new Response("OK");
+                response.setId(requestJson.get("id"));
+            } else if (watchers != null && type.equals("watch")) {
+                watchPath = Watchers.pathOf(requestJson.get("key"));
+                response = watchPath == null
+                        ? new Response("ERROR", "Invalid key format")
+                        : subscribe(connection, requestJson.get("value"));
+                if (!response.getResponse().equals("OK")) {
+                    watchPath = null;
+                }
+                response.setId(requestJson.get("id"));
+            } else if (watchers != null && type.equals("unwatch")) {
+                response = unwatch(connection, Watchers.pathOf(requestJson.get("key")));
+                response.setId(requestJson.get("id"));
+            } else {
+                response = handle(requestJson);
+            }
+        } catch (IOException | RuntimeException e) {
+            response = new Response("ERROR", "Malformed request");
+            response.setId(requestJson != null ? requestJson.get("id") : null);
+            type = null;
+            watchPath = null;
+        }
+        boolean watching;
+        synchronized (connection) {
+            watching = watchPath != null || connection.subscriber != null && !"unwatch".equals(type);
+        }
+        boolean last = !connection.session && !watching || "exit".equals(type);
+
+        List<ByteBuffer> encoded;
+        try {
+            encoded = encode(connection, frame, response);
+        } catch (RuntimeException e) {
+            System.out.println("Error encoding response: " + e.getMessage());
+            response = serverError(response.getId());
+            encoded = encode(connection, frame, response);
+            watchPath = null;
+        }
+
+        synchronized (connection) {
+            connection.outbox.addAll(encoded);
+            if (watchPath != null) {
+                watchers.watch(watchPath, response.getId(), connection.subscriber);
+            }
+            if (last) {
+                connection.closeAfterWrite = true;
+                connection.inbox.forEach(discarded -> release(connection, discarded, false));
+                connection.inbox.clear();
+            }
+        }
+        requestWrite(connection);
+    }
+
+    private Response subscribe(Connection connection, JsonElement options) {
+        int buffer = Config.WATCH_BUFFER;
+        Subscriber.Overflow overflow = Config.WATCH_OVERFLOW;
+        if (options != null && options.isJsonObject()) {
+            JsonObject settings = options.getAsJsonObject();
+            if (settings.has("buffer")) {
+                buffer = settings.get("buffer").getAsInt();
+            }
+            if (settings.has("overflow")) {
+                try {
+                    overflow = Subscriber.Overflow.valueOf(settings.get("overflow").getAsString().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    return new Response("ERROR", "Overflow must be drop or coalesce");
+                }
+            }
+        }
+        if (buffer < 1) {
+            return new Response("ERROR", "Buffer must hold at least one event");
+        }
+        synchronized (connection) {
+            if (connection.subscriber == null) {
+                connection.subscriber = new Subscriber(buffer, overflow, () -> requestWrite(connection));
+            }
+        }
+        return new Response("OK");
+    }
+
+    private Response unwatch(Connection connection, List<String> path) {
+        if (path == null) {
+            return new Response("ERROR", "Invalid key format");
+        }
+        Subscriber subscriber;
+        synchronized (connection) {
+            subscriber = connection.subscriber;
+        }
+        if (subscriber == null || watchers.unwatch(subscriber, path) == 0) {
+            return new Response("ERROR", "No such watch");
+        }
+        return new Response("OK");
+    }
+
+    private static long sizeOf(List<ByteBuffer> encoded) {
+        long size = 0;
+        for (ByteBuffer buffer : encoded) {
+            size += buffer.remaining();
+        }
+        return size;
+    }
+
+    private void requestWrite(Connection connection) {
+        if (connection.key.isValid()) {
+            connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+            selector.wakeup();
+        }
+    }
+
+    private Response handle(JsonObject requestJson) {
+        try {
+            return handler.apply(requestJson);
+        } catch (RuntimeException e) {
+            System.out.println("Error handling request: " + e.getMessage());
+            return serverError(requestJson.get("id"));
+        }
+    }
+
+    private static Response serverError(JsonElement id) {
+        Response response = new Response("ERROR", "Internal server error");
+        response.setId(id);
+        return response;
+    }
+
+    private List<ByteBuffer> encode(Connection connection, Frame frame, Response response) {
+        if (frame.legacy()) {
+            String responseJson = FrameCodec.toJson(response);
+            List<ByteBuffer> encoded = FrameCodec.encodeLegacy(response, responseJson);
+            Log.sampled(Log.Level.DEBUG, () -> "Sent: " + responseJson);
+            return encoded;
+        }
+        List<ByteBuffer> encoded = encode(connection, response);
+        Log.sampled(Log.Level.DEBUG, () -> "Sent: " + sizeOf(encoded) + " bytes");
+        return encoded;
+    }
+
+    private List<ByteBuffer> encode(Connection connection, Response response) {
+        if (!connection.lengthFraming) {
+            return FrameCodec.encodeLegacy(response);
+        }
+        List<ByteBuffer> encoded = connection.binaryEncoding ? FrameCodec.encodeBinary(response) : FrameCodec.encode(response);
+        return connection.compression ? FrameCodec.compress(encoded, Config.COMPRESSION_RESPONSE_THRESHOLD) : encoded;
+    }
+
+    private void write(Connection connection) throws IOException {
+        synchronized (connection) {
+            while (true) {
+                while (!connection.outbox.isEmpty()) {
+                    ByteBuffer buffer = connection.outbox.peek();
+                    bytesOut.add(connection.channel.write(buffer));
+                    if (buffer.hasRemaining()) {
+                        return;
+                    }
+                    connection.outbox.poll();
+                }
+                if (connection.subscriber == null || connection.closeAfterWrite) {
+                    break;
+                }
+                List<Response> events = connection.subscriber.drain(EVENT_BATCH);
+                if (events.isEmpty()) {
+                    break;
+                }
+                for (Response event : events) {
+                    connection.outbox.addAll(encode(connection, event));
+                }
+            }
+            connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (connection.closeAfterWrite && !connection.scheduled) {
+                close(connection.key);
+            }
+        }
+    }
+
+    private boolean hasPendingOutput() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection connection) {
+                synchronized (connection) {
+                    if (!connection.outbox.isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void close(SelectionKey key) {
+        if (key.attachment() instanceof Connection connection) {
+            if (connection.subscriber != null) {
+                watchers.unwatchAll(connection.subscriber);
+            }
+            if (key.isValid()) {
+                disconnected();
+            }
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            System.out.println("Error closing connection: " + e.getMessage());
+        }
+    }
+
+    private synchronized void disconnected() {
+        connections--;
+        if (acceptPaused && connections < Config.MAX_CONNECTIONS && serverChannel.isOpen()) {
+            serverChannel.keyFor(selector).interestOps(SelectionKey.OP_ACCEPT);
+            acceptPaused = false;
+            selector.wakeup();
+        }
+    }
+
+    public JsonObject admissionStats() {
+        JsonObject stats = limiter.stats();
+        stats.addProperty("busyConnection", busyConnection.sum());
+        stats.addProperty("busyQueue", busyQueue.sum());
+        stats.addProperty("pausedReads", pausedReads.sum());
+        stats.addProperty("acceptPaused", acceptPaused);
+        return stats;
+    }
+
+    public int getConcurrencyLimit() {
+        return limiter.getLimit();
+    }
+
+    public long getBusyCount() {
+        return limiter.getRejected() + busyConnection.sum() + busyQueue.sum();
+    }
+
+    public int getConnectionCount() {
+        return selector.keys().size() - 1;
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+}
@@ -0,0 +1,150 @@
+package server;
+
+import com.google.gson.*;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+public class Follower {
+
+    private final Gson gson = new Gson();
+    private final PeerClient leader;
+    private final File positionFile;
+    private final long pollMillis;
+    private final int batchSize;
+    private volatile String epoch = "";
+    private volatile long appliedSeq = 0;
+    private volatile long leaderSeq = 0;
+    private volatile long caughtUpAt = 0;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    public Follower(String address, int port, File positionFile, long pollMillis, int batchSize) {
+        this.leader = new PeerClient(address, port);
+        this.positionFile = positionFile;
+        this.pollMillis = pollMillis;
+        this.batchSize = batchSize;
+    }
+
+    public void start() {
+        loadPosition();
+        thread = new Thread(this::run, "replication");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        thread.interrupt();
+        leader.close();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                if (!poll()) {
+                    Thread.sleep(pollMillis);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Error replicating from leader: " + e.getMessage());
+                try {
+                    Thread.sleep(Math.max(pollMillis, 1000));
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private boolean poll() throws IOException {
+        JsonObject position = new JsonObject();
+        position.addProperty("epoch", epoch);
+        position.addProperty("from", appliedSeq + 1);
+        position.addProperty("max", batchSize);
+        JsonObject request = new JsonObject();
+        request.addProperty("type", "replicate");
+        request.add("value", position);
+
+        JsonObject response = leader.send(request);
+        if (!response.get("response").getAsString().equals("OK")) {
+            throw new IOException(response.has("reason") ? response.get("reason").getAsString() : "Replication refused");
+        }
+        JsonObject value = response.getAsJsonObject("value");
+        String leaderEpoch = value.get("epoch").getAsString();
+        long last = value.get("last").getAsLong();
+
+        int applied;
+        long seq;
+        if (value.has("snapshot")) {
+            Main.restoreSnapshot(value.getAsJsonObject("snapshot"));
+            applied = 1;
+            seq = last;
+            System.out.println("Resynchronized from leader snapshot at " + leaderEpoch + "#" + last + ".");
+        } else {
+            JsonArray records = value.getAsJsonArray("records");
+            for (JsonElement element : records) {
+                JsonObject record = element.getAsJsonObject();
+                Main.handleRequest(record.get("type").getAsString(), record.get("key"), record.get("value"));
+            }
+            applied = records.size();
+            seq = appliedSeq + applied;
+        }
+        if (applied > 0 || !leaderEpoch.equals(epoch)) {
+            epoch = leaderEpoch;
+            appliedSeq = seq;
+            savePosition();
+        }
+        leaderSeq = last;
+        if (appliedSeq >= last) {
+            caughtUpAt = System.nanoTime();
+        }
+        return applied > 0 && appliedSeq < last;
+    }
+
+    public boolean isFresh(long maxLagMillis) {
+        return caughtUpAt != 0 && System.nanoTime() - caughtUpAt <= TimeUnit.MILLISECONDS.toNanos(maxLagMillis);
+    }
+
+    public JsonObject forward(JsonObject request) throws IOException {
+        return leader.send(request);
+    }
+
+    public JsonObject stats() {
+        JsonObject stats = new JsonObject();
+        stats.addProperty("role", "follower");
+        stats.addProperty("epoch", epoch);
+        stats.addProperty("appliedSeq", appliedSeq);
+        stats.addProperty("leaderSeq", leaderSeq);
+        stats.addProperty("lagMillis", caughtUpAt == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - caughtUpAt));
+        return stats;
+    }
+
+    private void loadPosition() {
+        if (!positionFile.exists()) {
+            return;
+        }
+        try (FileReader reader = new FileReader(positionFile, StandardCharsets.UTF_8)) {
+            JsonObject position = gson.fromJson(reader, JsonObject.class);
+            epoch = position.get("epoch").getAsString();
+            appliedSeq = position.get("seq").getAsLong();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error reading replication position: " + e.getMessage());
+        }
+    }
+
+    private void savePosition() {
+        JsonObject position = new JsonObject();
+        position.addProperty("epoch", epoch);
+        position.addProperty("seq", appliedSeq);
+        try {
+            AtomicFile.write(positionFile, output -> output.write(gson.toJson(position).getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            System.out.println("Error saving replication position: " + e.getMessage());
+        }
+    }
+}
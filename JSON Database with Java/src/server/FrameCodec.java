@@ -0,0 +1,164 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class FrameCodec {
+
+    public static final int LEGACY_HEADER_BYTES = 2;
+    public static final int LENGTH_HEADER_BYTES = 4;
+    public static final int COMPRESSED_FLAG = 0x80000000;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final Gson gson = new Gson();
+
+    private FrameCodec() {
+    }
+
+    private static class ChunkedOutputStream extends OutputStream {
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private byte[] current = new byte[CHUNK_SIZE];
+        private int position = LENGTH_HEADER_BYTES;
+        private long size = 0;
+
+        @Override
+        public void write(int b) {
+            if (position == current.length) {
+                nextChunk();
+            }
+            current[position++] = (byte) b;
+            size++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            while (length > 0) {
+                if (position == current.length) {
+                    nextChunk();
+                }
+                int count = Math.min(length, current.length - position);
+                System.arraycopy(bytes, offset, current, position, count);
+                position += count;
+                offset += count;
+                length -= count;
+                size += count;
+            }
+        }
+
+        private void nextChunk() {
+            chunks.add(ByteBuffer.wrap(current, 0, position));
+            current = new byte[CHUNK_SIZE];
+            position = 0;
+        }
+
+        List<ByteBuffer> finish() {
+            chunks.add(ByteBuffer.wrap(current, 0, position));
+            chunks.get(0).putInt(0, (int) size);
+            return chunks;
+        }
+    }
+
+    public static JsonObject parseLegacy(byte[] frame) throws IOException {
+        String requestStr = new DataInputStream(new ByteArrayInputStream(frame)).readUTF();
+        return gson.fromJson(requestStr, JsonObject.class);
+    }
+
+    public static JsonObject parse(byte[] payload) {
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8));
+        return gson.fromJson(reader, JsonObject.class);
+    }
+
+    public static byte[] decompress(byte[] payload) {
+        return Compression.inflate(payload, 0, payload.length, payload.length * 4, Config.MAX_FRAME_BYTES);
+    }
+
+    public static List<ByteBuffer> compress(List<ByteBuffer> frame, int threshold) {
+        long size = -LENGTH_HEADER_BYTES;
+        for (ByteBuffer buffer : frame) {
+            size += buffer.remaining();
+        }
+        if (size < threshold || size > Integer.MAX_VALUE - LENGTH_HEADER_BYTES) {
+            return frame;
+        }
+        byte[] payload = new byte[(int) size];
+        int position = 0;
+        for (int i = 0; i < frame.size(); i++) {
+            ByteBuffer buffer = frame.get(i).duplicate();
+            if (i == 0) {
+                buffer.position(buffer.position() + LENGTH_HEADER_BYTES);
+            }
+            int count = buffer.remaining();
+            buffer.get(payload, position, count);
+            position += count;
+        }
+        byte[] deflated = Compression.deflate(payload, 0, payload.length);
+        if (deflated.length >= payload.length) {
+            return frame;
+        }
+        ByteBuffer compressed = ByteBuffer.allocate(LENGTH_HEADER_BYTES + deflated.length);
+        compressed.putInt(deflated.length | COMPRESSED_FLAG).put(deflated).flip();
+        return List.of(compressed);
+    }
+
+    public static JsonObject parseBinary(byte[] payload) {
+        return BinaryCodec.decode(payload).getAsJsonObject();
+    }
+
+    public static List<ByteBuffer> encodeBinary(Response response) {
+        byte[] encoded = BinaryCodec.encode(gson.toJsonTree(response));
+        ByteBuffer header = ByteBuffer.allocate(LENGTH_HEADER_BYTES).putInt(0, encoded.length);
+        return List.of(header, ByteBuffer.wrap(encoded));
+    }
+
+    public static String toJson(Response response) {
+        String serialized = response.getSerialized();
+        if (serialized == null) {
+            return gson.toJson(response);
+        }
+        if (response.getId() == null) {
+            return serialized;
+        }
+        return serialized.substring(0, serialized.length() - 1) + ",\"id\":" + gson.toJson(response.getId()) + "}";
+    }
+
+    public static List<ByteBuffer> encodeLegacy(Response response) {
+        return encodeLegacy(response, toJson(response));
+    }
+
+    public static List<ByteBuffer> encodeLegacy(Response response, String responseJson) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(responseJson.length() + LEGACY_HEADER_BYTES);
+        try {
+            new DataOutputStream(bytes).writeUTF(responseJson);
+        } catch (UTFDataFormatException e) {
+            Response tooLarge = new Response("ERROR", "Response too large, open a session with length framing");
+            tooLarge.setId(response.getId());
+            return encodeLegacy(tooLarge);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return List.of(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    public static List<ByteBuffer> encode(Response response) {
+        if (response.getSerialized() != null) {
+            byte[] encoded = toJson(response).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer frame = ByteBuffer.allocate(LENGTH_HEADER_BYTES + encoded.length);
+            frame.putInt(encoded.length).put(encoded).flip();
+            return List.of(frame);
+        }
+        ChunkedOutputStream output = new ChunkedOutputStream();
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)))) {
+            gson.toJson(response, Response.class, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.finish();
+    }
+}
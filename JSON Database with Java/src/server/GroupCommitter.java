@@ -0,0 +1,108 @@
+package server;
+
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class GroupCommitter implements Closeable {
+
+    private record Pending(String encodedRecord, long enqueuedAt, CompletableFuture<Void> durable) {
+    }
+
+    private final WriteAheadLog wal;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Histogram batchSizes = new Histogram();
+    private final Histogram commitLatencyMicros = new Histogram();
+    private final Thread committer;
+    private volatile boolean running = true;
+
+    public GroupCommitter(WriteAheadLog wal, long windowMs, int maxBatchSize) {
+        this.wal = wal;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.maxBatchSize = maxBatchSize;
+        this.committer = new Thread(this::run, "group-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    public CompletableFuture<Void> submit(JsonObject record) {
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        queue.add(new Pending(wal.encode(record), System.nanoTime(), durable));
+        return durable;
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = first.enqueuedAt() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                commit(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending> batch) {
+        List<String> records = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            records.add(pending.encodedRecord());
+        }
+        try {
+            wal.appendAll(records);
+            long now = System.nanoTime();
+            batchSizes.record(batch.size());
+            for (Pending pending : batch) {
+                commitLatencyMicros.record(TimeUnit.NANOSECONDS.toMicros(now - pending.enqueuedAt()));
+                pending.durable().complete(null);
+            }
+        } catch (IOException e) {
+            System.out.println("Error committing write-ahead log batch: " + e.getMessage());
+            for (Pending pending : batch) {
+                pending.durable().completeExceptionally(e);
+            }
+        }
+    }
+
+    public JsonObject stats() {
+        JsonObject stats = new JsonObject();
+        stats.add("batchSize", batchSizes.toJson());
+        stats.add("latencyMicros", commitLatencyMicros.toJson());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
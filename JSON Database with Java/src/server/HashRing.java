@@ -0,0 +1,60 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+public class HashRing {
+
+    private static final ThreadLocal<MessageDigest> digests = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final int virtualNodes;
+    private final TreeMap<Long, Integer> ring = new TreeMap<>();
+    private final Set<Integer> shards = new TreeSet<>();
+
+    public HashRing(Collection<Integer> shards, int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+        for (int shard : shards) {
+            add(shard);
+        }
+    }
+
+    private void add(int shard) {
+        shards.add(shard);
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.put(hash(shard + "#" + i), shard);
+        }
+    }
+
+    public HashRing withShard(int shard) {
+        HashRing copy = new HashRing(shards, virtualNodes);
+        copy.add(shard);
+        return copy;
+    }
+
+    public int ownerOf(String key) {
+        Map.Entry<Long, Integer> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Set<Integer> getShards() {
+        return shards;
+    }
+
+    private static long hash(String key) {
+        byte[] digest = digests.get().digest(key.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(digest).getLong();
+    }
+}
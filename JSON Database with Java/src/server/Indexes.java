@@ -0,0 +1,74 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+public class Indexes {
+
+    private final Map<String, SecondaryIndex> byPath = new ConcurrentHashMap<>();
+    private final File file;
+    private final Gson gson = new Gson();
+
+    public Indexes(File file) {
+        this.file = file;
+    }
+
+    public SecondaryIndex get(JsonArray path) {
+        return byPath.get(gson.toJson(path));
+    }
+
+    public synchronized SecondaryIndex create(JsonArray path) throws IOException {
+        String name = gson.toJson(path);
+        if (byPath.containsKey(name)) {
+            return null;
+        }
+        SecondaryIndex index = new SecondaryIndex(path);
+        byPath.put(name, index);
+        save();
+        return index;
+    }
+
+    public boolean isEmpty() {
+        return byPath.isEmpty();
+    }
+
+    public void onWrite(String rootKey, BiFunction<String, JsonArray, JsonElement> valueAt) {
+        for (SecondaryIndex index : byPath.values()) {
+            index.update(rootKey, valueAt.apply(rootKey, index.getPath()));
+        }
+    }
+
+    public JsonArray load() throws IOException {
+        if (!file.exists()) {
+            return new JsonArray();
+        }
+        try (FileReader reader = new FileReader(file, StandardCharsets.UTF_8)) {
+            JsonArray paths = gson.fromJson(reader, JsonArray.class);
+            return paths == null ? new JsonArray() : paths;
+        }
+    }
+
+    private void save() throws IOException {
+        JsonArray paths = new JsonArray();
+        for (SecondaryIndex index : byPath.values()) {
+            paths.add(index.getPath());
+        }
+        AtomicFile.write(file, output -> output.write(gson.toJson(paths).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public Map<String, Integer> sizes() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        byPath.forEach((name, index) -> sizes.put(name, index.size()));
+        return sizes;
+    }
+}
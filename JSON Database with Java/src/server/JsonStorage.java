@@ -0,0 +1,144 @@
+package server;
+
+import com.google.gson.*;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class JsonStorage implements Storage {
+
+    private final Map<String, JsonElement> database = new ConcurrentHashMap<>();
+    private final Gson gson = new Gson();
+    private final boolean compressSnapshot;
+    private final Gson gsonWriter;
+    private Map<String, Fragment> fragments = new HashMap<>();
+
+    private record Fragment(JsonElement source, byte[] bytes) {
+    }
+
+    public JsonStorage(boolean compressSnapshot) {
+        this.compressSnapshot = compressSnapshot;
+        this.gsonWriter = compressSnapshot ? gson : new GsonBuilder().setPrettyPrinting().create();
+    }
+
+    @Override
+    public JsonElement get(String rootKey) {
+        return database.get(rootKey);
+    }
+
+    @Override
+    public JsonElement get(JsonArray keyPath) {
+        JsonElement currentElement = database.get(keyPath.get(0).getAsString());
+        for (int i = 1; i < keyPath.size() && currentElement != null; i++) {
+            if (!currentElement.isJsonObject()) {
+                return null;
+            }
+            currentElement = currentElement.getAsJsonObject().get(keyPath.get(i).getAsString());
+        }
+        return currentElement;
+    }
+
+    @Override
+    public Supplier<JsonElement> capture(String rootKey) {
+        JsonElement value = database.get(rootKey);
+        return () -> value;
+    }
+
+    @Override
+    public void put(String rootKey, JsonElement value) {
+        database.put(rootKey, value);
+    }
+
+    @Override
+    public boolean remove(String rootKey) {
+        return database.remove(rootKey) != null;
+    }
+
+    @Override
+    public boolean containsKey(String rootKey) {
+        return database.containsKey(rootKey);
+    }
+
+    @Override
+    public int size() {
+        return database.size();
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        database.keySet().forEach(action);
+    }
+
+    @Override
+    public String getSnapshotFileName() {
+        return "db.json";
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        Map<String, JsonElement> captured = new HashMap<>(database);
+        return file -> writeSnapshot(file, captured);
+    }
+
+    private long writeSnapshot(File file, Map<String, JsonElement> captured) throws IOException {
+        Map<String, Fragment> rendered = new HashMap<>();
+        long size = AtomicFile.write(file, compressSnapshot, output -> {
+            boolean first = true;
+            output.write('{');
+            for (Map.Entry<String, JsonElement> entry : captured.entrySet()) {
+                Fragment fragment = fragments.get(entry.getKey());
+                if (fragment == null || fragment.source() != entry.getValue()) {
+                    fragment = new Fragment(entry.getValue(), render(entry.getKey(), entry.getValue()));
+                }
+                rendered.put(entry.getKey(), fragment);
+                if (fragment.bytes().length == 0) {
+                    continue;
+                }
+                if (!first) {
+                    output.write(',');
+                }
+                output.write('\n');
+                output.write(fragment.bytes());
+                first = false;
+            }
+            if (!first) {
+                output.write('\n');
+            }
+            output.write('}');
+        });
+        fragments = rendered;
+        return size;
+    }
+
+    private byte[] render(String key, JsonElement value) {
+        JsonObject entry = new JsonObject();
+        entry.add(key, value);
+        String rendered = gsonWriter.toJson(entry);
+        int margin = compressSnapshot ? 1 : 2;
+        if (rendered.length() <= 2 * margin) {
+            return new byte[0];
+        }
+        return rendered.substring(margin, rendered.length() - margin).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void readSnapshot(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (Reader reader = new InputStreamReader(Compression.open(file), StandardCharsets.UTF_8)) {
+            Type type = new TypeToken<Map<String, JsonElement>>() {}.getType();
+            Map<String, JsonElement> mapFromFile = gson.fromJson(reader, type);
+            if (mapFromFile != null) {
+                database.putAll(mapFromFile);
+            }
+        }
+    }
+}
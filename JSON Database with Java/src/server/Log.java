@@ -0,0 +1,79 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public final class Log {
+
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private record Line(long time, Level level, String message) {
+    }
+
+    private static final BlockingQueue<Line> lines = new ArrayBlockingQueue<>(Config.LOG_QUEUE);
+    private static final LongAdder dropped = new LongAdder();
+
+    static {
+        Thread writer = new Thread(Log::drain, "log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private Log() {
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(Config.LOG_LEVEL) >= 0;
+    }
+
+    public static void log(Level level, String message) {
+        if (isEnabled(level) && !lines.offer(new Line(System.currentTimeMillis(), level, message))) {
+            dropped.increment();
+        }
+    }
+
+    public static void sampled(Level level, Supplier<String> message) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        if (Config.LOG_SAMPLE_RATE < 1.0 && ThreadLocalRandom.current().nextDouble() >= Config.LOG_SAMPLE_RATE) {
+            return;
+        }
+        log(level, message.get());
+    }
+
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    private static void drain() {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        List<Line> batch = new ArrayList<>();
+        try {
+            while (true) {
+                batch.add(lines.take());
+                lines.drainTo(batch);
+                for (Line line : batch) {
+                    out.write(Instant.ofEpochMilli(line.time()) + " " + line.level() + " " + line.message());
+                    out.write(System.lineSeparator());
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (InterruptedException | IOException e) {
+            System.out.println("Error writing log: " + e.getMessage());
+        }
+    }
+}
@@ -1,102 +1,160 @@
 package server;
 
 import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import java.io.*;
-import java.lang.reflect.Type;
-import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Main {
 
-    private static final Map<String, JsonElement> database = new HashMap<>();
-    private static final Gson gsonWriter = new GsonBuilder().setPrettyPrinting().create();
     private static final Gson gson = new Gson();
-    private static final File file = new File("src/server/data/db.json");
-    private static ServerSocket server = null;
-    private static final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private static final Lock readLock = lock.readLock();
-    private static final Lock writeLock = lock.writeLock();
+    private static final Storage storage = createStorage();
+    private static final File file = new File(Config.DATA_DIR, storage.getSnapshotFileName());
+    private static final File walFile = new File(Config.DATA_DIR, "db.wal");
+    private static final Indexes indexes = new Indexes(new File(Config.DATA_DIR, "indexes.json"));
+    private static final Object fileLock = new Object();
+    private static final Histogram snapshotMillis = new Histogram();
+    private static final Histogram snapshotBytes = new Histogram();
+    private static final ReplicationLog replicationLog =
+            Config.REPLICATION_LOG_SIZE > 0 ? new ReplicationLog(Config.REPLICATION_LOG_SIZE) : null;
+    private static final ResponseCache cache =
+            Config.CACHE_ENTRIES > 0 ? new ResponseCache(Config.CACHE_ENTRIES) : null;
+    private static final File expirationsFile = new File(Config.DATA_DIR, "ttl.json");
+    private static final File replicationFile = new File(Config.DATA_DIR, "replication-log.json");
+    private static final Map<String, Long> expirations = new ConcurrentHashMap<>();
+    private static final OrderedKeys orderedKeys = new OrderedKeys();
+    private static TimingWheel timingWheel = null;
+    private static final Watchers watchers = new Watchers();
+    private static final Metrics metrics = new Metrics();
+    private static final VersionedRoots roots = new VersionedRoots(storage, System.currentTimeMillis() << 20);
+    private static WriteAheadLog wal = null;
+    private static Follower follower = null;
+    private static GroupCommitter groupCommitter = null;
+    private static EventLoop eventLoop = null;
+    private static final StripedLock locks = new StripedLock(Config.LOCK_STRIPES);
 
     public static void main(String[] args) {
 
         String address = "127.0.0.1";
-        int port = 23456;
+        int port = Config.PORT;
 
-        File parentDir = file.getParentFile();
-        if (!parentDir.exists()) {
-            parentDir.mkdirs();
+        if (!openStorage()) {
+            return;
         }
 
-        if (file.exists()) {
-            readFromFileAndSaveToDB();
+        if (Config.isFollower()) {
+            String[] leader = Config.REPLICATION_LEADER.split(":");
+            follower = new Follower(leader[0], Integer.parseInt(leader[1]), new File(Config.DATA_DIR, "replication.json"),
+                    Config.REPLICATION_POLL_MS, Config.REPLICATION_BATCH);
+            follower.start();
+        } else {
+            startExpiryReaper();
         }
 
-        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        int threads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Config.ADMISSION_QUEUE));
 
         try {
-            server = new ServerSocket(port, 50, InetAddress.getByName(address));
+            eventLoop = new EventLoop(address, port, Config.BACKLOG, executor, Main::execute, watchers);
+            metrics.bind(executor, eventLoop);
+            registerMetrics();
             System.out.println("Server started!");
-            while (true) {
-                try {
-                    Socket socket = server.accept();
-                    executor.submit(() -> processRequest(socket));
-                } catch (IOException e) {
-                    executor.shutdownNow();
-                    System.out.println("Server stopped accepting connections: " + e.getMessage());
-                    break;
-                }
-            }
+            eventLoop.run();
+            System.out.println("Server stopped accepting connections.");
         } catch (IOException e) {
             System.out.println("Could not start server: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+            if (follower != null) {
+                follower.stop();
+            }
+            closeStorage();
         }
     }
 
-    public static void processRequest(Socket socket) {
-        try (DataInputStream input = new DataInputStream(socket.getInputStream());
-             DataOutputStream output = new DataOutputStream(socket.getOutputStream())) {
-
-            String requestStr = input.readUTF();
-            JsonObject requestJson = gson.fromJson(requestStr, JsonObject.class);
+    private static void registerMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("server:type=Metrics,port=" + Config.PORT));
+        } catch (JMException e) {
+            System.out.println("Could not register metrics: " + e.getMessage());
+        }
+    }
 
-            String type = requestJson.get("type").getAsString();
-            JsonElement keyElement = requestJson.has("key") ? requestJson.get("key") : null;
-            JsonElement valueElement = requestJson.has("value") ? requestJson.get("value") : null;
+    public static Response execute(JsonObject requestJson) {
+        long start = System.nanoTime();
+        String type = requestJson.get("type").getAsString();
+        JsonElement keyElement = requestJson.has("key") ? requestJson.get("key") : null;
+        JsonElement valueElement = requestJson.has("value") ? requestJson.get("value") : null;
 
-            Response response;
+        Response response;
 
-            if (type.equals("exit")) {
-                writeLock.lock();
-                try {
-                    server.close();
-                    response = new Response("OK");
-                    System.out.println("Server has been stopped, because of 'exit' argument (request).");
-                } finally {
-                    writeLock.unlock();
-                }
-            } else {
-                response = handleRequest(type, keyElement, valueElement);
+        if (type.equals("exit")) {
+            eventLoop.stop();
+            response = new Response("OK");
+            System.out.println("Server has been stopped, because of 'exit' argument (request).");
+        } else if (follower != null && servedByLeader(type, requestJson)) {
+            try {
+                response = gson.fromJson(follower.forward(requestJson), Response.class);
+            } catch (IOException e) {
+                response = new Response("ERROR", "Leader unavailable: " + e.getMessage());
             }
+        } else {
+            response = handleRequest(type, keyElement, valueElement, requestJson.get("ttl"));
+        }
+        response.setId(requestJson.get("id"));
+        metrics.record(type, System.nanoTime() - start, response);
+        return response;
+    }
 
-            String responseJson = gson.toJson(response);
-            output.writeUTF(responseJson);
-            System.out.println("Sent: " + responseJson);
-
-        } catch (IOException e) {
-            System.out.println("Server exception during request processing: " + e.getMessage());
+    private static boolean servedByLeader(String type, JsonObject requestJson) {
+        switch (type) {
+            case "set", "delete", "mset", "mdelete", "transaction", "bulkLoad", "expire", "expireAt", "cas", "incr", "version" -> {
+                return true;
+            }
+            case "get", "mget", "snapshot", "scan", "query", "keys", "ttl" -> {
+                String consistency = requestJson.has("consistency")
+                        ? requestJson.get("consistency").getAsString()
+                        : Config.READ_CONSISTENCY;
+                return switch (consistency) {
+                    case "leader" -> true;
+                    case "bounded" -> !follower.isFresh(Config.REPLICATION_MAX_LAG_MS);
+                    default -> false;
+                };
+            }
+            default -> {
+                return false;
+            }
         }
     }
 
     public static Response handleRequest(String type, JsonElement keyElement, JsonElement valueElement) {
+        return handleRequest(type, keyElement, valueElement, null);
+    }
+
+    public static Response handleRequest(String type, JsonElement keyElement, JsonElement valueElement, JsonElement ttlElement) {
         if (type == null || type.isEmpty()) {
             return new Response("ERROR", "No such type");
         }
@@ -106,127 +164,1286 @@ public class Main {
                 if (keyElement == null || valueElement == null) {
                     return new Response("ERROR", "Key or Value or both is missing");
                 }
-                writeLock.lock();
+                if (ttlElement == null) {
+                    return mutate("set", keyElement, valueElement);
+                }
+                Long deadline = deadlineOf(ttlElement);
+                if (deadline == null) {
+                    return new Response("ERROR", "TTL must be a positive number of milliseconds");
+                }
+                return mutate("set", keyElement, valueElement, deadline);
+            }
+            case "expire" -> {
+                if (keyElement == null || rootKeyOf(keyElement) == null) {
+                    return new Response("ERROR", "Key is missing");
+                }
+                Long deadline = deadlineOf(valueElement);
+                if (deadline == null) {
+                    return new Response("ERROR", "TTL must be a positive number of milliseconds");
+                }
+                return mutate("expireAt", new JsonPrimitive(rootKeyOf(keyElement)), new JsonPrimitive(deadline));
+            }
+            case "expireAt" -> {
+                if (keyElement == null || rootKeyOf(keyElement) == null || valueElement == null) {
+                    return new Response("ERROR", "Key or Value or both is missing");
+                }
+                return mutate("expireAt", new JsonPrimitive(rootKeyOf(keyElement)), valueElement);
+            }
+            case "cas" -> {
+                if (keyElement == null || rootKeyOf(keyElement) == null) {
+                    return new Response("ERROR", "Key is missing");
+                }
+                if (valueElement == null || !valueElement.isJsonObject() || !valueElement.getAsJsonObject().has("set")
+                        || !valueElement.getAsJsonObject().has("expect") && !valueElement.getAsJsonObject().has("version")) {
+                    return new Response("ERROR", "Value must contain set and either expect or version");
+                }
+                return mutate("cas", keyElement, valueElement);
+            }
+            case "incr" -> {
+                if (keyElement == null || rootKeyOf(keyElement) == null) {
+                    return new Response("ERROR", "Key is missing");
+                }
+                JsonElement delta = valueElement != null ? valueElement : new JsonPrimitive(1);
+                if (!delta.isJsonPrimitive() || !delta.getAsJsonPrimitive().isNumber()) {
+                    return new Response("ERROR", "Increment must be a number");
+                }
+                return mutate("incr", keyElement, delta);
+            }
+            case "version" -> {
+                if (keyElement == null || rootKeyOf(keyElement) == null) {
+                    return new Response("ERROR", "Key is missing");
+                }
+                String rootKey = rootKeyOf(keyElement);
+                Lock readLock = locks.forKey(rootKey).readLock();
+                acquire(readLock);
                 try {
-                    if (keyElement.isJsonPrimitive()) {
-                        database.put(keyElement.getAsString(), valueElement);
-                    } else if (keyElement.isJsonArray()) {
-                        JsonArray keyPath = keyElement.getAsJsonArray();
-                        if (keyPath.size() == 0) {
-                            return new Response("ERROR", "Empty key path for set operation");
-                        }
-                        String rootKey = keyPath.get(0).getAsString();
-                        if (!database.containsKey(rootKey) || !database.get(rootKey).isJsonObject()) {
-                            database.put(rootKey, new JsonObject());
-                        }
-                        JsonObject currentObject = database.get(rootKey).getAsJsonObject();
-                        traverseAndModifyJson(currentObject, keyPath, valueElement, 1, false);
-                    } else {
-                        return new Response("ERROR", "Invalid key format");
+                    if (!storage.containsKey(rootKey) || isExpired(rootKey)) {
+                        return new Response("ERROR", "No such key");
                     }
-                    saveDBToFile();
-                    return new Response("OK");
+                    return new Response("OK", new JsonPrimitive(versionOf(rootKey)), null);
                 } finally {
-                    writeLock.unlock();
+                    readLock.unlock();
+                }
+            }
+            case "ttl" -> {
+                if (keyElement == null || rootKeyOf(keyElement) == null) {
+                    return new Response("ERROR", "Key is missing");
+                }
+                String rootKey = rootKeyOf(keyElement);
+                Lock readLock = locks.forKey(rootKey).readLock();
+                acquire(readLock);
+                try {
+                    if (!storage.containsKey(rootKey) || isExpired(rootKey)) {
+                        return new Response("ERROR", "No such key");
+                    }
+                    Long deadline = expirations.get(rootKey);
+                    long remaining = deadline == null ? -1 : deadline - System.currentTimeMillis();
+                    return new Response("OK", new JsonPrimitive(remaining), null);
+                } finally {
+                    readLock.unlock();
                 }
             }
             case "get" -> {
                 if (keyElement == null) {
                     return new Response("ERROR","Key is missing");
                 }
-                readLock.lock();
-                try {
-                    if (keyElement.isJsonPrimitive()) {
-                        JsonElement value = database.get(keyElement.getAsString());
-                        if (value != null) {
-                            return new Response("OK", value, null);
-                        } else {
-                            return new Response("ERROR", "No such key");
-                        }
-                    } else if (keyElement.isJsonArray()) {
-                        JsonArray keyPath = keyElement.getAsJsonArray();
-                        if (keyPath.size() == 0) {
-                            return new Response("ERROR", "Empty key path for get operation");
-                        }
-                        String rootKey = keyPath.get(0).getAsString();
-                        JsonElement currentElement = database.get(rootKey);
-
-                        if (currentElement == null) {
-                            return new Response("ERROR", "No such key");
-                        }
-
-                        for (int i = 1; i < keyPath.size(); i++) {
-                            if (currentElement == null || !currentElement.isJsonObject() || !currentElement.getAsJsonObject().has(keyPath.get(i).getAsString())) {
-                                return new Response("ERROR", "No such key");
-                            }
-                            currentElement = currentElement.getAsJsonObject().get(keyPath.get(i).getAsString());
-                        }
-                        return new Response("OK", currentElement, null);
+                List<String> path = cache != null ? segmentsOf(keyElement) : null;
+                if (isExpired(rootKeyOf(keyElement))) {
+                    return new Response("ERROR", "No such key");
+                }
+                ResponseCache.Entry cached = path != null ? cache.get(path) : null;
+                if (cached != null) {
+                    Response response = new Response("OK", cached.value(), null);
+                    response.setSerialized(cached.json());
+                    return response;
+                }
+                long stamp = path != null ? cache.stamp(path) : 0;
+                if (keyElement.isJsonPrimitive()) {
+                    JsonElement value = roots.latest(keyElement.getAsString());
+                    if (value != null) {
+                        return found(path, stamp, value);
                     } else {
-                        return new Response("ERROR", "Invalid key format");
+                        return new Response("ERROR", "No such key");
                     }
-                } finally {
-                    readLock.unlock();
+                } else if (keyElement.isJsonArray()) {
+                    JsonArray keyPath = keyElement.getAsJsonArray();
+                    if (keyPath.size() == 0) {
+                        return new Response("ERROR", "Empty key path for get operation");
+                    }
+                    JsonElement value = roots.latest(keyPath);
+                    if (value == null) {
+                        return new Response("ERROR", "No such key");
+                    }
+                    return found(path, stamp, value);
+                } else {
+                    return new Response("ERROR", "Invalid key format");
                 }
             }
             case "delete" -> {
                 if (keyElement == null) {
                     return new Response("ERROR", "Key is missing");
                 }
-                writeLock.lock();
+                return mutate("delete", keyElement, null);
+            }
+            case "mget" -> {
+                JsonArray keys = keysOf(keyElement);
+                if (keys == null) {
+                    return new Response("ERROR", "Keys are missing or invalid");
+                }
+                long snapshot = roots.openSnapshot();
                 try {
-                    if (keyElement.isJsonPrimitive()) {
-                        if (database.containsKey(keyElement.getAsString())) {
-                            database.remove(keyElement.getAsString());
-                            saveDBToFile();
-                            return new Response("OK");
-                        }
-                        return new Response("ERROR", "No such key");
-                    } else if (keyElement.isJsonArray()) {
-                        JsonArray keyPath = keyElement.getAsJsonArray();
-                        if (keyPath.size() == 0) {
-                            return new Response("ERROR", "Empty key path for delete operation");
+                    return new Response("OK", readAt(keys, snapshot), null);
+                } finally {
+                    roots.closeSnapshot(snapshot);
+                }
+            }
+            case "snapshot" -> {
+                JsonArray keys = keysOf(keyElement);
+                if (keys == null) {
+                    return new Response("ERROR", "Keys are missing or invalid");
+                }
+                long snapshot = roots.openSnapshot();
+                try {
+                    JsonObject result = new JsonObject();
+                    result.addProperty("version", snapshot);
+                    result.add("values", readAt(keys, snapshot));
+                    result.add("expirations", deadlinesAt(keys));
+                    return new Response("OK", result, null);
+                } finally {
+                    roots.closeSnapshot(snapshot);
+                }
+            }
+            case "mset" -> {
+                JsonArray keys = keysOf(keyElement);
+                if (keys == null) {
+                    return new Response("ERROR", "Keys are missing or invalid");
+                }
+                if (valueElement == null || !valueElement.isJsonArray()
+                        || valueElement.getAsJsonArray().size() != keys.size()) {
+                    return new Response("ERROR", "Values must be an array matching the keys");
+                }
+                return mutateAll("mset", keys, valueElement.getAsJsonArray());
+            }
+            case "mdelete" -> {
+                JsonArray keys = keysOf(keyElement);
+                if (keys == null) {
+                    return new Response("ERROR", "Keys are missing or invalid");
+                }
+                return mutateAll("mdelete", keys, null);
+            }
+            case "transaction" -> {
+                if (valueElement == null || !valueElement.isJsonArray() || valueElement.getAsJsonArray().size() == 0) {
+                    return new Response("ERROR", "Operations are missing");
+                }
+                JsonArray operations = valueElement.getAsJsonArray();
+                for (int i = 0; i < operations.size(); i++) {
+                    String problem = operationProblem(operations.get(i));
+                    if (problem != null) {
+                        return new Response("ERROR", "Operation " + i + ": " + problem);
+                    }
+                }
+                return transact(operations);
+            }
+            case "bulkLoad" -> {
+                if (valueElement == null || !valueElement.isJsonObject()) {
+                    return new Response("ERROR", "Bulk load options are missing");
+                }
+                JsonObject load = valueElement.getAsJsonObject();
+                JsonElement records = load.has("records") ? load.get("records") : new JsonArray();
+                if (!records.isJsonArray()) {
+                    return new Response("ERROR", "Records must be an array");
+                }
+                JsonArray keys = new JsonArray(records.getAsJsonArray().size());
+                JsonArray values = new JsonArray(records.getAsJsonArray().size());
+                for (int i = 0; i < records.getAsJsonArray().size(); i++) {
+                    JsonElement record = records.getAsJsonArray().get(i);
+                    if (!record.isJsonObject() || !record.getAsJsonObject().has("key")
+                            || segmentsOf(record.getAsJsonObject().get("key")) == null) {
+                        return new Response("ERROR", "Record " + i + ": Invalid key format");
+                    }
+                    if (!record.getAsJsonObject().has("value")) {
+                        return new Response("ERROR", "Record " + i + ": Value is missing");
+                    }
+                    keys.add(record.getAsJsonObject().get("key"));
+                    values.add(record.getAsJsonObject().get("value"));
+                }
+                int loaded;
+                try {
+                    loaded = keys.isEmpty() ? 0 : loadAll(keys, values, true);
+                } catch (IOException e) {
+                    System.out.println("Error appending to write-ahead log: " + e.getMessage());
+                    return new Response("ERROR", "Write could not be persisted");
+                }
+                JsonObject result = new JsonObject();
+                result.addProperty("loaded", loaded);
+                if (loaded > 0 && wal == null || load.has("flush") && load.get("flush").getAsBoolean()) {
+                    return flushBulkLoad(new Response("OK", result, null));
+                }
+                return new Response("OK", result, null);
+            }
+            case "createIndex" -> {
+                JsonArray path = pathOf(keyElement);
+                if (path == null) {
+                    return new Response("ERROR", "Key path is missing");
+                }
+                try {
+                    SecondaryIndex index = indexes.create(path);
+                    if (index == null) {
+                        return new Response("ERROR", "Index already exists");
+                    }
+                    buildIndex(index);
+                    return new Response("OK");
+                } catch (IOException e) {
+                    return new Response("ERROR", "Index could not be saved");
+                }
+            }
+            case "query" -> {
+                JsonArray path = pathOf(keyElement);
+                if (path == null) {
+                    return new Response("ERROR", "Key path is missing");
+                }
+                if (valueElement == null || !valueElement.isJsonObject()) {
+                    return new Response("ERROR", "Query predicate is missing");
+                }
+                SecondaryIndex index = indexes.get(path);
+                if (index == null) {
+                    return new Response("ERROR", "No index on key path");
+                }
+                try {
+                    JsonArray keys = new JsonArray();
+                    for (String rootKey : index.query(valueElement.getAsJsonObject())) {
+                        if (!isExpired(rootKey)) {
+                            keys.add(rootKey);
                         }
-                        String rootKey = keyPath.get(0).getAsString();
-                        JsonElement currentElement = database.get(rootKey);
+                    }
+                    return new Response("OK", keys, null);
+                } catch (IllegalArgumentException e) {
+                    return new Response("ERROR", e.getMessage());
+                }
+            }
+            case "keys" -> {
+                JsonArray keys = new JsonArray();
+                storage.forEachKey(rootKey -> {
+                    if (!isExpired(rootKey)) {
+                        keys.add(rootKey);
+                    }
+                });
+                return new Response("OK", keys, null);
+            }
+            case "scan" -> {
+                JsonObject options = valueElement == null ? new JsonObject()
+                        : valueElement.isJsonPrimitive() ? prefixOptions(valueElement.getAsString())
+                        : valueElement.isJsonObject() ? valueElement.getAsJsonObject() : null;
+                if (options == null) {
+                    return new Response("ERROR", "Scan options must be an object");
+                }
+                JsonElement limitElement = options.get("limit");
+                int limit = limitElement == null ? Math.min(100, Config.SCAN_MAX_LIMIT)
+                        : limitElement.isJsonPrimitive() && limitElement.getAsJsonPrimitive().isNumber() ? limitElement.getAsInt() : -1;
+                if (limit <= 0 || limit > Config.SCAN_MAX_LIMIT) {
+                    return new Response("ERROR", "Limit must be between 1 and " + Config.SCAN_MAX_LIMIT);
+                }
+                try {
+                    OrderedKeys.Position position = OrderedKeys.positionOf(stringOption(options, "start"),
+                            stringOption(options, "prefix"), stringOption(options, "cursor"));
+                    boolean withValues = options.has("values") && options.get("values").getAsBoolean();
+                    return new Response("OK", scan(position, limit, withValues), null);
+                } catch (IllegalArgumentException e) {
+                    return new Response("ERROR", e.getMessage());
+                }
+            }
+            case "replicate" -> {
+                if (replicationLog == null) {
+                    return new Response("ERROR", "Replication is disabled");
+                }
+                if (valueElement == null || !valueElement.isJsonObject()) {
+                    return new Response("ERROR", "Replication position is missing");
+                }
+                return new Response("OK", replicate(valueElement.getAsJsonObject()), null);
+            }
+            case "stats" -> {
+                return new Response("OK", stats(), null);
+            }
+            default -> {
+                return new Response("ERROR", "Unknown command");
+            }
+        }
+    }
 
-                        if (currentElement == null || !currentElement.isJsonObject()) {
-                            return new Response("ERROR", "No such key");
-                        }
+    private static String rootKeyOf(JsonElement keyElement) {
+        if (keyElement.isJsonPrimitive()) {
+            return keyElement.getAsString();
+        }
+        if (keyElement.isJsonArray() && keyElement.getAsJsonArray().size() > 0) {
+            return keyElement.getAsJsonArray().get(0).getAsString();
+        }
+        return null;
+    }
 
-                        if (keyPath.size() == 1) {
-                            database.remove(rootKey);
-                            saveDBToFile();
-                            return new Response("OK");
-                        } else {
-                            JsonObject parentObject = currentElement.getAsJsonObject();
-                            for (int i = 1; i < keyPath.size() - 1; i++) {
-                                String currentPathSegment = keyPath.get(i).getAsString();
-                                if (!parentObject.has(currentPathSegment) || !parentObject.get(currentPathSegment).isJsonObject()) {
-                                    return new Response("ERROR", "No such key");
-                                }
-                                parentObject = parentObject.getAsJsonObject().get(currentPathSegment).getAsJsonObject();
-                            }
-                            String lastKey = keyPath.get(keyPath.size() - 1).getAsString();
-                            if (parentObject.has(lastKey)) {
-                                parentObject.remove(lastKey);
-                                saveDBToFile();
-                                return new Response("OK");
+    private static List<String> segmentsOf(JsonElement keyElement) {
+        if (keyElement.isJsonPrimitive()) {
+            return List.of(keyElement.getAsString());
+        }
+        if (!keyElement.isJsonArray() || keyElement.getAsJsonArray().size() == 0) {
+            return null;
+        }
+        List<String> segments = new ArrayList<>();
+        for (JsonElement segment : keyElement.getAsJsonArray()) {
+            if (!segment.isJsonPrimitive()) {
+                return null;
+            }
+            segments.add(segment.getAsString());
+        }
+        return List.copyOf(segments);
+    }
+
+    private static JsonObject prefixOptions(String prefix) {
+        JsonObject options = new JsonObject();
+        options.addProperty("prefix", prefix);
+        return options;
+    }
+
+    private static String stringOption(JsonObject options, String name) {
+        return options.has(name) && !options.get(name).isJsonNull() ? options.get(name).getAsString() : null;
+    }
+
+    private static JsonObject scan(OrderedKeys.Position position, int limit, boolean withValues) {
+        JsonObject result = new JsonObject();
+        JsonArray keys = new JsonArray();
+        if (!withValues) {
+            OrderedKeys.Page page = orderedKeys.scan(position, limit,
+                    rootKey -> storage.containsKey(rootKey) && !isExpired(rootKey));
+            page.keys().forEach(keys::add);
+            result.add("keys", keys);
+            result.addProperty("cursor", page.cursor());
+            return result;
+        }
+        JsonArray values = new JsonArray();
+        long snapshot = roots.openSnapshot();
+        try {
+            OrderedKeys.Page page = orderedKeys.scan(position, limit, rootKey -> {
+                if (isExpired(rootKey)) {
+                    return false;
+                }
+                JsonElement value = roots.read(rootKey, snapshot);
+                if (value == null) {
+                    return false;
+                }
+                values.add(value);
+                return true;
+            });
+            page.keys().forEach(keys::add);
+            result.addProperty("version", snapshot);
+            result.add("keys", keys);
+            result.add("values", values);
+            result.addProperty("cursor", page.cursor());
+            return result;
+        } finally {
+            roots.closeSnapshot(snapshot);
+        }
+    }
+
+    private static JsonArray readAt(JsonArray keys, long snapshot) {
+        JsonArray values = new JsonArray();
+        for (JsonElement key : keys) {
+            String rootKey = rootKeyOf(key);
+            JsonElement value = isExpired(rootKey) ? null : roots.read(rootKey, snapshot);
+            if (key.isJsonArray()) {
+                JsonArray keyPath = key.getAsJsonArray();
+                for (int i = 1; i < keyPath.size() && value != null; i++) {
+                    value = value.isJsonObject() ? value.getAsJsonObject().get(keyPath.get(i).getAsString()) : null;
+                }
+            }
+            values.add(value != null ? value : JsonNull.INSTANCE);
+        }
+        return values;
+    }
+
+    private static JsonObject deadlinesAt(JsonArray keys) {
+        JsonObject deadlines = new JsonObject();
+        for (JsonElement key : keys) {
+            String rootKey = rootKeyOf(key);
+            Long deadline = expirations.get(rootKey);
+            if (deadline != null) {
+                deadlines.addProperty(rootKey, deadline);
+            }
+        }
+        return deadlines;
+    }
+
+    private static Response found(List<String> path, long stamp, JsonElement value) {
+        Response response = new Response("OK", value, null);
+        if (path != null) {
+            String json = gson.toJson(response);
+            cache.put(path, stamp, new ResponseCache.Entry(value, json));
+            response.setSerialized(json);
+        }
+        return response;
+    }
+
+    private static void invalidate(JsonElement keyElement) {
+        List<String> path = cache != null ? segmentsOf(keyElement) : null;
+        if (path != null) {
+            cache.invalidate(path);
+        }
+    }
+
+    private static JsonArray keysOf(JsonElement keyElement) {
+        if (keyElement == null || !keyElement.isJsonArray() || keyElement.getAsJsonArray().size() == 0) {
+            return null;
+        }
+        for (JsonElement key : keyElement.getAsJsonArray()) {
+            if (rootKeyOf(key) == null) {
+                return null;
+            }
+        }
+        return keyElement.getAsJsonArray();
+    }
+
+    private static Set<String> rootKeysOf(JsonArray keys) {
+        Set<String> rootKeys = new LinkedHashSet<>();
+        for (JsonElement key : keys) {
+            rootKeys.add(rootKeyOf(key));
+        }
+        return rootKeys;
+    }
+
+    private static JsonArray pathOf(JsonElement keyElement) {
+        if (keyElement == null) {
+            return null;
+        }
+        if (keyElement.isJsonPrimitive()) {
+            JsonArray path = new JsonArray();
+            path.add(keyElement);
+            return path;
+        }
+        if (keyElement.isJsonArray() && keyElement.getAsJsonArray().size() > 0) {
+            return keyElement.getAsJsonArray();
+        }
+        return null;
+    }
+
+    private static JsonElement valueAt(String rootKey, JsonArray path) {
+        JsonArray keyPath = new JsonArray();
+        keyPath.add(rootKey);
+        keyPath.addAll(path);
+        return storage.get(keyPath);
+    }
+
+    private static void buildIndex(SecondaryIndex index) {
+        storage.forEachKey(rootKey -> {
+            Lock readLock = locks.forKey(rootKey).readLock();
+            acquire(readLock);
+            try {
+                index.update(rootKey, valueAt(rootKey, index.getPath()));
+            } finally {
+                readLock.unlock();
+            }
+        });
+    }
+
+    private static void acquire(Lock lock) {
+        long start = System.nanoTime();
+        lock.lock();
+        metrics.recordLockWait(System.nanoTime() - start);
+    }
+
+    private static Response mutate(String type, JsonElement keyElement, JsonElement valueElement) {
+        return mutate(type, keyElement, valueElement, null);
+    }
+
+    private static Response mutate(String type, JsonElement keyElement, JsonElement valueElement, Long deadline) {
+        Response response = null;
+        List<JsonObject> logged = new ArrayList<>();
+        String rootKey = rootKeyOf(keyElement);
+        List<String> rootKeys = rootKey == null ? List.of() : List.of(rootKey);
+        Lock writeLock = locks.forKey(rootKey).writeLock();
+        acquire(writeLock);
+        try {
+            long version = roots.begin(rootKeys);
+            Map<String, Long> deadlines = deadlinesOf(rootKeys);
+            boolean rolledBack = false;
+            try {
+                response = apply(type, keyElement, valueElement);
+                if (response.getResponse().equals("OK") && deadline != null) {
+                    applyExpireAt(rootKey, deadline);
+                }
+                if (response.getResponse().equals("OK") && type.equals("cas")) {
+                    JsonObject result = new JsonObject();
+                    result.addProperty("version", version);
+                    response = new Response("OK", result, null);
+                }
+                if (response.getResponse().equals("OK") && !indexes.isEmpty()) {
+                    indexes.onWrite(rootKey, Main::valueAt);
+                }
+                CompletableFuture<Void> durable = null;
+                if (response.getResponse().equals("OK")) {
+                    switch (type) {
+                        case "expired" -> durable = appendToLog(logged, "delete", keyElement, null);
+                        case "cas" -> durable = appendToLog(logged, "set", keyElement, valueElement.getAsJsonObject().get("set"));
+                        case "incr" -> durable = appendToLog(logged, "set", keyElement, response.getValue());
+                        default -> durable = appendToLog(logged, type, keyElement, valueElement);
+                    }
+                }
+                if (response.getResponse().equals("OK") && deadline != null) {
+                    durable = allOf(durable, appendToLog(logged, "expireAt", new JsonPrimitive(rootKey), new JsonPrimitive(deadline)));
+                }
+                awaitDurable(durable);
+            } catch (IOException e) {
+                System.out.println("Error appending to write-ahead log: " + e.getMessage());
+                rollback(rootKeys, version, deadlines);
+                rolledBack = true;
+                response = new Response("ERROR", "Write could not be persisted");
+            } finally {
+                boolean changed = rolledBack || response != null && response.getResponse().equals("OK");
+                roots.commit(rootKeys, version, changed);
+                if (changed) {
+                    invalidate(rolledBack ? new JsonPrimitive(rootKey) : keyElement);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (response.getResponse().equals("OK")) {
+            publish(logged);
+        }
+        if (response.getResponse().equals("OK") && wal == null) {
+            saveDBToFile();
+        }
+        return response;
+    }
+
+    private static Response mutateAll(String type, JsonArray keys, JsonArray values) {
+        int changed;
+        List<JsonObject> logged = new ArrayList<>();
+        Set<String> rootKeys = rootKeysOf(keys);
+        List<ReadWriteLock> stripes = locks.forKeys(rootKeys);
+        long waitStart = System.nanoTime();
+        stripes.forEach(stripe -> stripe.writeLock().lock());
+        metrics.recordLockWait(System.nanoTime() - waitStart);
+        try {
+            long version = roots.begin(rootKeys);
+            Map<String, Long> deadlines = deadlinesOf(rootKeys);
+            changed = 0;
+            try {
+                changed = type.equals("mset") ? applySetAll(keys, values) : applyDeleteAll(keys);
+                if (changed > 0 && !indexes.isEmpty()) {
+                    rootKeys.forEach(rootKey -> indexes.onWrite(rootKey, Main::valueAt));
+                }
+                if (changed > 0) {
+                    awaitDurable(appendToLog(logged, type, keys, values));
+                }
+            } catch (IOException e) {
+                System.out.println("Error appending to write-ahead log: " + e.getMessage());
+                rollback(rootKeys, version, deadlines);
+                changed = -1;
+            } finally {
+                roots.commit(rootKeys, version, changed != 0);
+                if (changed != 0) {
+                    rootKeys.forEach(rootKey -> invalidate(new JsonPrimitive(rootKey)));
+                }
+            }
+        } finally {
+            for (int i = stripes.size() - 1; i >= 0; i--) {
+                stripes.get(i).writeLock().unlock();
+            }
+        }
+        if (changed < 0) {
+            return new Response("ERROR", "Write could not be persisted");
+        }
+        publish(logged);
+        if (changed > 0 && wal == null) {
+            saveDBToFile();
+        }
+        return type.equals("mset") ? new Response("OK") : new Response("OK", new JsonPrimitive(changed), null);
+    }
+
+    public static int load(JsonArray keys, JsonArray values) {
+        if (replicationLog != null) {
+            replicationLog.reset();
+        }
+        try {
+            return loadAll(keys, values, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int loadAll(JsonArray keys, JsonArray values, boolean logged) throws IOException {
+        List<JsonObject> records = new ArrayList<>();
+        Set<String> rootKeys = rootKeysOf(keys);
+        List<ReadWriteLock> stripes = locks.forKeys(rootKeys);
+        long waitStart = System.nanoTime();
+        stripes.forEach(stripe -> stripe.writeLock().lock());
+        metrics.recordLockWait(System.nanoTime() - waitStart);
+        int changed = 0;
+        try {
+            long version = roots.begin(rootKeys);
+            Map<String, Long> deadlines = deadlinesOf(rootKeys);
+            boolean rolledBack = false;
+            try {
+                changed = applySetAll(keys, values);
+                if (changed > 0 && !indexes.isEmpty()) {
+                    rootKeys.forEach(rootKey -> indexes.onWrite(rootKey, Main::valueAt));
+                }
+                if (changed > 0 && logged) {
+                    awaitDurable(appendToLog(records, "mset", keys, values, true));
+                }
+            } catch (IOException e) {
+                rollback(rootKeys, version, deadlines);
+                rolledBack = true;
+                changed = 0;
+                throw e;
+            } finally {
+                roots.commit(rootKeys, version, rolledBack || changed > 0);
+                if (rolledBack || changed > 0) {
+                    rootKeys.forEach(rootKey -> invalidate(new JsonPrimitive(rootKey)));
+                }
+            }
+        } finally {
+            for (int i = stripes.size() - 1; i >= 0; i--) {
+                stripes.get(i).writeLock().unlock();
+            }
+        }
+        publish(records);
+        return changed;
+    }
+
+    private static Response flushBulkLoad(Response response) {
+        if (wal == null) {
+            saveDBToFile();
+            return response;
+        }
+        if (groupCommitter != null) {
+            return response;
+        }
+        long start = System.nanoTime();
+        try {
+            wal.sync();
+            metrics.recordFlush(System.nanoTime() - start);
+            return response;
+        } catch (IOException e) {
+            return new Response("ERROR", "Write could not be persisted");
+        }
+    }
+
+    private static String operationProblem(JsonElement element) {
+        if (!element.isJsonObject()) {
+            return "Operation must be an object";
+        }
+        JsonObject operation = element.getAsJsonObject();
+        String type = operation.has("type") ? operation.get("type").getAsString() : "";
+        if (!operation.has("key") || segmentsOf(operation.get("key")) == null) {
+            return "Invalid key format";
+        }
+        if (operation.has("version") && !(operation.get("version").isJsonPrimitive()
+                && operation.get("version").getAsJsonPrimitive().isNumber())) {
+            return "Version must be a number";
+        }
+        return switch (type) {
+            case "set" -> operation.has("value") ? null : "Value is missing";
+            case "delete" -> null;
+            case "check" -> operation.has("version") ? null : "Version is missing";
+            default -> "Unsupported operation type";
+        };
+    }
+
+    private static Response transact(JsonArray operations) {
+        Set<String> rootKeys = new LinkedHashSet<>();
+        for (JsonElement operation : operations) {
+            rootKeys.add(rootKeyOf(operation.getAsJsonObject().get("key")));
+        }
+        Response response = null;
+        boolean committed = false;
+        List<JsonObject> logged = new ArrayList<>();
+        List<ReadWriteLock> stripes = locks.forKeys(rootKeys);
+        long waitStart = System.nanoTime();
+        stripes.forEach(stripe -> stripe.writeLock().lock());
+        metrics.recordLockWait(System.nanoTime() - waitStart);
+        try {
+            response = validate(operations);
+            if (response == null) {
+                Map<String, JsonElement> staged = new HashMap<>();
+                Set<String> replacedRoots = new HashSet<>();
+                JsonArray applied = new JsonArray();
+                for (int i = 0; i < operations.size() && response == null; i++) {
+                    JsonObject operation = operations.get(i).getAsJsonObject();
+                    String problem = stage(staged, replacedRoots, operation);
+                    if (problem != null) {
+                        JsonObject failed = new JsonObject();
+                        failed.addProperty("operation", i);
+                        response = new Response("ERROR", failed, problem);
+                    } else if (!operation.get("type").getAsString().equals("check")) {
+                        JsonObject record = new JsonObject();
+                        record.add("type", operation.get("type"));
+                        record.add("key", operation.get("key"));
+                        if (operation.has("value")) {
+                            record.add("value", operation.get("value"));
+                        }
+                        applied.add(record);
+                    }
+                }
+                if (response == null) {
+                    long version = roots.begin(staged.keySet());
+                    Map<String, Long> deadlines = deadlinesOf(staged.keySet());
+                    boolean rolledBack = false;
+                    try {
+                        staged.forEach((rootKey, root) -> {
+                            if (root == null) {
+                                removeRoot(rootKey);
                             } else {
-                                return new Response("ERROR", "No such key");
+                                putRoot(rootKey, root);
                             }
+                            if (replacedRoots.contains(rootKey)) {
+                                expirations.remove(rootKey);
+                            }
+                        });
+                        if (!indexes.isEmpty()) {
+                            staged.keySet().forEach(rootKey -> indexes.onWrite(rootKey, Main::valueAt));
+                        }
+                        if (!staged.isEmpty()) {
+                            awaitDurable(appendToLog(logged, "transaction", null, applied));
+                        }
+                        committed = !staged.isEmpty();
+                    } catch (IOException e) {
+                        System.out.println("Error appending to write-ahead log: " + e.getMessage());
+                        rollback(staged.keySet(), version, deadlines);
+                        rolledBack = true;
+                        response = new Response("ERROR", "Write could not be persisted");
+                    } finally {
+                        roots.commit(staged.keySet(), version, committed || rolledBack);
+                        if (committed || rolledBack) {
+                            staged.keySet().forEach(rootKey -> invalidate(new JsonPrimitive(rootKey)));
                         }
-                    } else {
-                        return new Response("ERROR", "Invalid key format");
                     }
-                } finally {
-                    writeLock.unlock();
+                    if (response == null) {
+                        JsonObject result = new JsonObject();
+                        result.addProperty("version", committed ? version : roots.getPublished());
+                        response = new Response("OK", result, null);
+                    }
                 }
             }
-            default -> {
-                return new Response("ERROR", "Unknown command");
+        } finally {
+            for (int i = stripes.size() - 1; i >= 0; i--) {
+                stripes.get(i).writeLock().unlock();
             }
         }
+        if (committed) {
+            publish(logged);
+        }
+        if (committed && wal == null) {
+            saveDBToFile();
+        }
+        return response;
+    }
+
+    private static Response validate(JsonArray operations) {
+        for (int i = 0; i < operations.size(); i++) {
+            JsonObject operation = operations.get(i).getAsJsonObject();
+            if (!operation.has("version")) {
+                continue;
+            }
+            String rootKey = rootKeyOf(operation.get("key"));
+            long current = isExpired(rootKey) ? 0 : versionOf(rootKey);
+            if (operation.get("version").getAsLong() != current) {
+                JsonObject conflict = new JsonObject();
+                conflict.addProperty("operation", i);
+                conflict.addProperty("version", current);
+                return new Response("ERROR", conflict, "Version conflict");
+            }
+        }
+        return null;
+    }
+
+    private static String stage(Map<String, JsonElement> staged, Set<String> replacedRoots, JsonObject operation) {
+        String type = operation.get("type").getAsString();
+        if (type.equals("check")) {
+            return null;
+        }
+        JsonElement keyElement = operation.get("key");
+        String rootKey = rootKeyOf(keyElement);
+        JsonElement root;
+        if (staged.containsKey(rootKey)) {
+            root = staged.get(rootKey);
+        } else if (isExpired(rootKey)) {
+            root = null;
+            replacedRoots.add(rootKey);
+        } else {
+            root = storage.get(rootKey);
+        }
+        JsonArray keyPath = keyElement.isJsonArray() ? keyElement.getAsJsonArray() : null;
+        if (keyPath == null || keyPath.size() == 1) {
+            if (type.equals("delete") && root == null) {
+                return "No such key";
+            }
+            staged.put(rootKey, type.equals("set") ? operation.get("value") : null);
+            replacedRoots.add(rootKey);
+            return null;
+        }
+        if (type.equals("set")) {
+            JsonObject newRoot = root != null && root.isJsonObject() ? copyOf(root.getAsJsonObject()) : new JsonObject();
+            traverseAndModifyJson(newRoot, keyPath, operation.get("value"), 1, false);
+            staged.put(rootKey, newRoot);
+            return null;
+        }
+        if (root == null || !root.isJsonObject()) {
+            return "No such key";
+        }
+        JsonObject newRoot = copyOf(root.getAsJsonObject());
+        JsonObject parentObject = newRoot;
+        for (int i = 1; i < keyPath.size() - 1; i++) {
+            String segment = keyPath.get(i).getAsString();
+            if (!parentObject.has(segment) || !parentObject.get(segment).isJsonObject()) {
+                return "No such key";
+            }
+            JsonObject child = copyOf(parentObject.get(segment).getAsJsonObject());
+            parentObject.add(segment, child);
+            parentObject = child;
+        }
+        if (parentObject.remove(keyPath.get(keyPath.size() - 1).getAsString()) == null) {
+            return "No such key";
+        }
+        staged.put(rootKey, newRoot);
+        return null;
+    }
+
+    private static void applyTransaction(JsonArray operations) {
+        for (JsonElement element : operations) {
+            JsonObject operation = element.getAsJsonObject();
+            if (operation.get("type").getAsString().equals("set")) {
+                applySet(operation.get("key"), operation.get("value"));
+            } else {
+                applyDelete(operation.get("key"));
+            }
+        }
+    }
+
+    private static int applySetAll(JsonArray keys, JsonArray values) {
+        int changed = 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (applySet(keys.get(i), values.get(i)).getResponse().equals("OK")) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private static int applyDeleteAll(JsonArray keys) {
+        int changed = 0;
+        for (JsonElement key : keys) {
+            if (applyDelete(key).getResponse().equals("OK")) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private static Response apply(String type, JsonElement keyElement, JsonElement valueElement) {
+        return switch (type) {
+            case "set" -> applySet(keyElement, valueElement);
+            case "expireAt" -> {
+                if (!valueElement.isJsonPrimitive() || !valueElement.getAsJsonPrimitive().isNumber()) {
+                    yield new Response("ERROR", "Expiry must be a timestamp in milliseconds");
+                }
+                yield applyExpireAt(keyElement.getAsString(), valueElement.getAsLong());
+            }
+            case "cas" -> applyCas(keyElement, valueElement.getAsJsonObject());
+            case "incr" -> applyIncr(keyElement, valueElement);
+            case "expired" -> {
+                Long deadline = expirations.get(keyElement.getAsString());
+                if (deadline == null || deadline != valueElement.getAsLong()) {
+                    yield new Response("ERROR", "Key is not expired");
+                }
+                yield applyDelete(keyElement);
+            }
+            default -> applyDelete(keyElement);
+        };
+    }
+
+    private static JsonElement currentValue(JsonElement keyElement) {
+        if (keyElement.isJsonPrimitive()) {
+            return storage.get(keyElement.getAsString());
+        }
+        return storage.get(keyElement.getAsJsonArray());
+    }
+
+    private static Response applyCas(JsonElement keyElement, JsonObject condition) {
+        String rootKey = rootKeyOf(keyElement);
+        JsonElement current = currentValue(keyElement);
+        boolean matches;
+        if (condition.has("version")) {
+            matches = condition.get("version").getAsLong() == versionOf(rootKey);
+        } else {
+            JsonElement expected = condition.get("expect");
+            matches = expected.isJsonNull() ? current == null || current.isJsonNull() : expected.equals(current);
+        }
+        if (!matches) {
+            JsonObject actual = new JsonObject();
+            if (current != null) {
+                actual.add("value", current);
+            }
+            actual.addProperty("version", versionOf(rootKey));
+            return new Response("ERROR", actual, "Compare failed");
+        }
+        return applySet(keyElement, condition.get("set"));
+    }
+
+    private static Response applyIncr(JsonElement keyElement, JsonElement delta) {
+        JsonElement current = currentValue(keyElement);
+        if (current != null && !(current.isJsonPrimitive() && current.getAsJsonPrimitive().isNumber())) {
+            return new Response("ERROR", "Value is not a number");
+        }
+        String base = current == null ? "0" : current.getAsNumber().toString();
+        String increment = delta.getAsNumber().toString();
+        BigDecimal sum = new BigDecimal(base).add(new BigDecimal(increment));
+        JsonPrimitive result = isWholeNumber(base) && isWholeNumber(increment)
+                ? new JsonPrimitive(sum.toBigIntegerExact())
+                : new JsonPrimitive(sum);
+        Response response = applySet(keyElement, result);
+        if (!response.getResponse().equals("OK")) {
+            return response;
+        }
+        return new Response("OK", result, null);
+    }
+
+    private static boolean isWholeNumber(String number) {
+        return number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0;
+    }
+
+    private static long versionOf(String rootKey) {
+        return storage.containsKey(rootKey) ? roots.versionOf(rootKey) : 0;
+    }
+
+    private static Response applyExpireAt(String rootKey, long deadline) {
+        if (!storage.containsKey(rootKey)) {
+            return new Response("ERROR", "No such key");
+        }
+        expirations.put(rootKey, deadline);
+        TimingWheel wheel = timingWheel;
+        if (wheel != null) {
+            wheel.schedule(rootKey, deadline);
+        }
+        return new Response("OK");
+    }
+
+    private static boolean isExpired(String rootKey) {
+        Long deadline = rootKey != null ? expirations.get(rootKey) : null;
+        return deadline != null && deadline <= System.currentTimeMillis();
+    }
+
+    private static Long deadlineOf(JsonElement ttlElement) {
+        if (ttlElement == null || !ttlElement.isJsonPrimitive() || !ttlElement.getAsJsonPrimitive().isNumber()
+                || ttlElement.getAsLong() <= 0) {
+            return null;
+        }
+        return System.currentTimeMillis() + ttlElement.getAsLong();
+    }
+
+    private static void startExpiryReaper() {
+        timingWheel = new TimingWheel(Config.TTL_TICK_MS, System.currentTimeMillis());
+        expirations.forEach(timingWheel::schedule);
+        ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "expiry-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(() -> {
+            for (TimingWheel.Timer timer : timingWheel.advance(System.currentTimeMillis())) {
+                Long deadline = expirations.get(timer.key());
+                if (deadline == null || deadline != timer.deadline()) {
+                    continue;
+                }
+                try {
+                    mutate("expired", new JsonPrimitive(timer.key()), new JsonPrimitive(timer.deadline()));
+                } catch (RuntimeException e) {
+                    System.out.println("Error expiring key " + timer.key() + ": " + e.getMessage());
+                }
+            }
+        }, Config.TTL_TICK_MS, Config.TTL_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static Response applySet(JsonElement keyElement, JsonElement valueElement) {
+        if (keyElement.isJsonPrimitive()) {
+            putRoot(keyElement.getAsString(), valueElement);
+            expirations.remove(keyElement.getAsString());
+        } else if (keyElement.isJsonArray()) {
+            JsonArray keyPath = keyElement.getAsJsonArray();
+            if (keyPath.size() == 0) {
+                return new Response("ERROR", "Empty key path for set operation");
+            }
+            String rootKey = keyPath.get(0).getAsString();
+            if (keyPath.size() == 1) {
+                putRoot(rootKey, valueElement);
+                expirations.remove(rootKey);
+                return new Response("OK");
+            }
+            JsonElement root = storage.get(rootKey);
+            JsonObject newRoot = root != null && root.isJsonObject() ? copyOf(root.getAsJsonObject()) : new JsonObject();
+            traverseAndModifyJson(newRoot, keyPath, valueElement, 1, false);
+            putRoot(rootKey, newRoot);
+        } else {
+            return new Response("ERROR", "Invalid key format");
+        }
+        return new Response("OK");
+    }
+
+    private static Response applyDelete(JsonElement keyElement) {
+        if (keyElement.isJsonPrimitive()) {
+            if (removeRoot(keyElement.getAsString())) {
+                expirations.remove(keyElement.getAsString());
+                return new Response("OK");
+            }
+            return new Response("ERROR", "No such key");
+        } else if (keyElement.isJsonArray()) {
+            JsonArray keyPath = keyElement.getAsJsonArray();
+            if (keyPath.size() == 0) {
+                return new Response("ERROR", "Empty key path for delete operation");
+            }
+            String rootKey = keyPath.get(0).getAsString();
+            JsonElement currentElement = storage.get(rootKey);
+
+            if (currentElement == null || !currentElement.isJsonObject()) {
+                return new Response("ERROR", "No such key");
+            }
+
+            if (keyPath.size() == 1) {
+                removeRoot(rootKey);
+                expirations.remove(rootKey);
+                return new Response("OK");
+            }
+            JsonObject newRoot = copyOf(currentElement.getAsJsonObject());
+            JsonObject parentObject = newRoot;
+            for (int i = 1; i < keyPath.size() - 1; i++) {
+                String currentPathSegment = keyPath.get(i).getAsString();
+                if (!parentObject.has(currentPathSegment) || !parentObject.get(currentPathSegment).isJsonObject()) {
+                    return new Response("ERROR", "No such key");
+                }
+                JsonObject child = copyOf(parentObject.get(currentPathSegment).getAsJsonObject());
+                parentObject.add(currentPathSegment, child);
+                parentObject = child;
+            }
+            String lastKey = keyPath.get(keyPath.size() - 1).getAsString();
+            if (parentObject.has(lastKey)) {
+                parentObject.remove(lastKey);
+                putRoot(rootKey, newRoot);
+                return new Response("OK");
+            }
+            return new Response("ERROR", "No such key");
+        }
+        return new Response("ERROR", "Invalid key format");
+    }
+
+    private static void putRoot(String rootKey, JsonElement root) {
+        storage.put(rootKey, root);
+        orderedKeys.add(rootKey);
+    }
+
+    private static boolean removeRoot(String rootKey) {
+        orderedKeys.remove(rootKey);
+        return storage.remove(rootKey);
+    }
+
+    private static Map<String, Long> deadlinesOf(Collection<String> rootKeys) {
+        Map<String, Long> deadlines = new HashMap<>();
+        for (String rootKey : rootKeys) {
+            Long deadline = expirations.get(rootKey);
+            if (deadline != null) {
+                deadlines.put(rootKey, deadline);
+            }
+        }
+        return deadlines;
+    }
+
+    private static void rollback(Collection<String> rootKeys, long version, Map<String, Long> deadlines) {
+        for (String rootKey : rootKeys) {
+            JsonElement previous = roots.previous(rootKey, version);
+            if (previous == null) {
+                removeRoot(rootKey);
+            } else {
+                putRoot(rootKey, previous);
+            }
+            Long deadline = deadlines.get(rootKey);
+            if (deadline == null) {
+                expirations.remove(rootKey);
+            } else {
+                expirations.put(rootKey, deadline);
+            }
+            if (!indexes.isEmpty()) {
+                indexes.onWrite(rootKey, Main::valueAt);
+            }
+        }
+    }
+
+    private static CompletableFuture<Void> appendToLog(List<JsonObject> logged, String type, JsonElement keyElement, JsonElement valueElement) throws IOException {
+        return appendToLog(logged, type, keyElement, valueElement, false);
+    }
+
+    private static CompletableFuture<Void> appendToLog(List<JsonObject> logged, String type, JsonElement keyElement, JsonElement valueElement, boolean deferSync) throws IOException {
+        JsonObject record = new JsonObject();
+        record.addProperty("type", type);
+        record.add("key", keyElement);
+        if (valueElement != null) {
+            record.add("value", valueElement);
+        }
+        CompletableFuture<Void> durable = replicationLog != null
+                ? replicationLog.append(record, appended -> writeToLog(appended, deferSync))
+                : writeToLog(record, deferSync);
+        logged.add(record);
+        return groupCommitter != null ? durable : null;
+    }
+
+    private static CompletableFuture<Void> writeToLog(JsonObject record, boolean deferSync) throws IOException {
+        if (groupCommitter != null) {
+            return groupCommitter.submit(record);
+        }
+        if (wal != null) {
+            long start = System.nanoTime();
+            CompletableFuture<Void> synced = wal.append(record, !deferSync);
+            metrics.recordFlush(System.nanoTime() - start);
+            return synced;
+        }
+        return null;
+    }
+
+    private static CompletableFuture<Void> allOf(CompletableFuture<Void> first, CompletableFuture<Void> second) {
+        if (first == null || second == null) {
+            return first == null ? second : first;
+        }
+        return CompletableFuture.allOf(first, second);
+    }
+
+    private static void awaitDurable(CompletableFuture<Void> durable) throws IOException {
+        if (durable == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            durable.join();
+            metrics.recordFlush(System.nanoTime() - start);
+        } catch (CompletionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void publish(List<JsonObject> logged) {
+        if (!watchers.isEmpty()) {
+            logged.forEach(watchers::publish);
+        }
+    }
+
+    private static JsonObject replicate(JsonObject position) {
+        JsonObject result = new JsonObject();
+        result.addProperty("epoch", replicationLog.getEpoch());
+        String epoch = position.has("epoch") ? position.get("epoch").getAsString() : "";
+        long from = position.has("from") ? position.get("from").getAsLong() : 1;
+        int max = position.has("max") ? position.get("max").getAsInt() : Config.REPLICATION_BATCH;
+
+        JsonArray records = epoch.equals(replicationLog.getEpoch()) ? replicationLog.read(from, max) : null;
+        if (records != null) {
+            result.addProperty("last", replicationLog.getDurableSeq());
+            result.add("records", records);
+            return result;
+        }
+
+        JsonArray keys = new JsonArray();
+        JsonArray values = new JsonArray();
+        JsonObject deadlines = new JsonObject();
+        locks.lockAllRead();
+        try {
+            storage.forEachKey(key -> {
+                JsonElement value = storage.get(key);
+                if (value != null) {
+                    keys.add(key);
+                    values.add(value);
+                    Long deadline = expirations.get(key);
+                    if (deadline != null) {
+                        deadlines.addProperty(key, deadline);
+                    }
+                }
+            });
+            result.addProperty("last", replicationLog.getLastSeq());
+        } finally {
+            locks.unlockAllRead();
+        }
+        JsonObject snapshot = new JsonObject();
+        snapshot.add("keys", keys);
+        snapshot.add("values", values);
+        snapshot.add("expirations", deadlines);
+        result.add("snapshot", snapshot);
+        return result;
+    }
+
+    public static void restoreSnapshot(JsonObject snapshot) {
+        JsonArray keys = snapshot.getAsJsonArray("keys");
+        JsonArray values = snapshot.getAsJsonArray("values");
+        JsonObject deadlines = snapshot.has("expirations") ? snapshot.getAsJsonObject("expirations") : new JsonObject();
+        locks.lockAllWrite();
+        try {
+            Set<String> rootKeys = new HashSet<>();
+            storage.forEachKey(rootKeys::add);
+            Set<String> restored = new HashSet<>();
+            keys.forEach(key -> restored.add(key.getAsString()));
+            rootKeys.addAll(restored);
+            long version = roots.begin(rootKeys);
+            try {
+                for (String rootKey : rootKeys) {
+                    if (!restored.contains(rootKey)) {
+                        removeRoot(rootKey);
+                    }
+                }
+                for (int i = 0; i < keys.size(); i++) {
+                    putRoot(keys.get(i).getAsString(), values.get(i));
+                }
+                expirations.clear();
+                deadlines.entrySet().forEach(entry -> expirations.put(entry.getKey(), entry.getValue().getAsLong()));
+                if (!indexes.isEmpty()) {
+                    rootKeys.forEach(rootKey -> indexes.onWrite(rootKey, Main::valueAt));
+                }
+            } finally {
+                roots.commit(rootKeys, version, true);
+                rootKeys.forEach(rootKey -> invalidate(new JsonPrimitive(rootKey)));
+            }
+        } finally {
+            locks.unlockAllWrite();
+        }
+        checkpoint();
+    }
+
+    private static JsonObject stats() {
+        JsonObject stats = new JsonObject();
+        stats.addProperty("keys", storage.size());
+        if (groupCommitter != null) {
+            stats.add("groupCommit", groupCommitter.stats());
+        }
+        if (!indexes.isEmpty()) {
+            stats.add("indexes", gson.toJsonTree(indexes.sizes()));
+        }
+        if (cache != null) {
+            stats.add("cache", cache.stats());
+        }
+        stats.addProperty("expiring", expirations.size());
+        stats.add("watch", watchers.stats());
+        JsonObject versioning = new JsonObject();
+        versioning.addProperty("version", roots.getPublished());
+        versioning.addProperty("history", roots.historySize());
+        stats.add("mvcc", versioning);
+        if (follower != null) {
+            stats.add("replication", follower.stats());
+        } else if (replicationLog != null) {
+            JsonObject replication = new JsonObject();
+            replication.addProperty("role", "leader");
+            replication.addProperty("epoch", replicationLog.getEpoch());
+            replication.addProperty("lastSeq", replicationLog.getLastSeq());
+            replication.addProperty("durableSeq", replicationLog.getDurableSeq());
+            stats.add("replication", replication);
+        }
+        JsonObject snapshots = new JsonObject();
+        snapshots.add("durationMillis", snapshotMillis.toJson());
+        snapshots.add("bytesWritten", snapshotBytes.toJson());
+        stats.add("snapshot", snapshots);
+        stats.add("compression", Compression.stats());
+        stats.add("metrics", metrics.toJson());
+        return stats;
     }
 
     private static void traverseAndModifyJson(JsonObject current, JsonArray path, JsonElement valueToSet, int index, boolean isDelete) {
@@ -241,29 +1458,238 @@ public class Main {
         }
 
         String nextKey = path.get(index).getAsString();
-        if (!current.has(nextKey) || !current.get(nextKey).isJsonObject()) {
-            current.add(nextKey, new JsonObject());
+        JsonObject next;
+        if (current.has(nextKey) && current.get(nextKey).isJsonObject()) {
+            next = copyOf(current.get(nextKey).getAsJsonObject());
+        } else {
+            next = new JsonObject();
+        }
+        current.add(nextKey, next);
+        traverseAndModifyJson(next, path, valueToSet, index + 1, isDelete);
+    }
+
+    private static JsonObject copyOf(JsonObject source) {
+        JsonObject copy = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : source.entrySet()) {
+            copy.add(entry.getKey(), entry.getValue());
         }
-        traverseAndModifyJson(current.get(nextKey).getAsJsonObject(), path, valueToSet, index + 1, isDelete);
+        return copy;
     }
 
 
     public static void saveDBToFile() {
-        try (FileWriter writer = new FileWriter(file)) {
-            gsonWriter.toJson(database, writer);
+        long start = System.nanoTime();
+        synchronized (fileLock) {
+            writeDBToFile();
+        }
+        metrics.recordFlush(System.nanoTime() - start);
+    }
+
+    private static boolean writeDBToFile() {
+        long start = System.nanoTime();
+        try {
+            JsonObject position;
+            JsonObject deadlines = new JsonObject();
+            Storage.Snapshot snapshot;
+            locks.lockAllRead();
+            try {
+                position = replicationLog != null ? replicationLog.position() : null;
+                expirations.forEach(deadlines::addProperty);
+                snapshot = storage.snapshot();
+            } finally {
+                locks.unlockAllRead();
+            }
+            long bytes = snapshot.writeTo(file);
+            if (deadlines.size() > 0 || expirationsFile.exists()) {
+                bytes += AtomicFile.write(expirationsFile,
+                        output -> output.write(gson.toJson(deadlines).getBytes(StandardCharsets.UTF_8)));
+            }
+            if (position != null) {
+                bytes += writeReplicationPosition(position, false);
+            }
+            snapshotMillis.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            snapshotBytes.record(bytes);
+            return true;
         } catch (IOException e) {
             System.out.println("Error saving DB to file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static long writeReplicationPosition(JsonObject position, boolean clean) throws IOException {
+        position.addProperty("clean", clean);
+        return AtomicFile.write(replicationFile, output -> output.write(gson.toJson(position).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Storage createStorage() {
+        if (Config.isMappedStorage()) {
+            return new MappedStorage(Config.MAPPED_SEGMENT_BYTES, Config.COMPRESSION_VALUE_THRESHOLD);
+        }
+        return Config.isBinaryStorage()
+                ? new BinaryStorage(Config.COMPRESSION_VALUE_THRESHOLD, Config.SNAPSHOT_COMPRESSED)
+                : new JsonStorage(Config.SNAPSHOT_COMPRESSED);
+    }
+
+    public static boolean openStorage() {
+        File parentDir = file.getParentFile();
+        if (!parentDir.exists()) {
+            parentDir.mkdirs();
+        }
+
+        readFromFileAndSaveToDB();
+
+        if (Config.isWalEnabled()) {
+            try {
+                openWriteAheadLog();
+            } catch (IOException e) {
+                System.out.println("Could not open write-ahead log: " + e.getMessage());
+                return false;
+            }
+        }
+
+        if (replicationLog != null) {
+            try {
+                writeReplicationPosition(replicationLog.position(), false);
+            } catch (IOException e) {
+                System.out.println("Could not save replication position: " + e.getMessage());
+            }
+        }
+
+        try {
+            for (JsonElement path : indexes.load()) {
+                buildIndex(indexes.create(path.getAsJsonArray()));
+            }
+        } catch (IOException | JsonParseException e) {
+            System.out.println("Could not load indexes: " + e.getMessage());
+        }
+        return true;
+    }
+
+    public static void closeStorage() {
+        boolean saved;
+        if (wal == null) {
+            synchronized (fileLock) {
+                saved = writeDBToFile();
+            }
+        } else {
+            if (groupCommitter != null) {
+                groupCommitter.close();
+            }
+            snapshot();
+            try {
+                wal.close();
+                saved = true;
+            } catch (IOException e) {
+                System.out.println("Error closing write-ahead log: " + e.getMessage());
+                saved = false;
+            }
+        }
+        if (saved && replicationLog != null) {
+            try {
+                writeReplicationPosition(replicationLog.position(), true);
+            } catch (IOException e) {
+                System.out.println("Could not save replication position: " + e.getMessage());
+            }
+        }
+    }
+
+    private static void openWriteAheadLog() throws IOException {
+        boolean existed = walFile.exists();
+        wal = new WriteAheadLog(walFile, Config.WAL_SYNC, Config.WAL_SYNC_INTERVAL_MS);
+        if (existed) {
+            locks.lockAllWrite();
+            try {
+                int replayed = wal.replay(record -> {
+                    String type = record.get("type").getAsString();
+                    if (type.equals("set")) {
+                        applySet(record.get("key"), record.get("value"));
+                    } else if (type.equals("delete")) {
+                        applyDelete(record.get("key"));
+                    } else if (type.equals("mset")) {
+                        applySetAll(record.getAsJsonArray("key"), record.getAsJsonArray("value"));
+                    } else if (type.equals("mdelete")) {
+                        applyDeleteAll(record.getAsJsonArray("key"));
+                    } else if (type.equals("transaction")) {
+                        applyTransaction(record.getAsJsonArray("value"));
+                    } else if (type.equals("expireAt")) {
+                        apply(type, record.get("key"), record.get("value"));
+                    }
+                    if (replicationLog != null) {
+                        replicationLog.replayed(record);
+                    }
+                });
+                System.out.println("Replayed " + replayed + " records from write-ahead log.");
+            } finally {
+                locks.unlockAllWrite();
+            }
+        }
+        if (Config.GROUP_COMMIT_WINDOW_MS > 0) {
+            groupCommitter = new GroupCommitter(wal, Config.GROUP_COMMIT_WINDOW_MS, Config.GROUP_COMMIT_MAX_BATCH);
+        }
+
+        ScheduledExecutorService snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(Main::snapshot,
+                Config.SNAPSHOT_INTERVAL_MS, Config.SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isDurablyLogged() {
+        return Config.isWalEnabled() && Config.WAL_SYNC != WriteAheadLog.SyncPolicy.NONE;
+    }
+
+    public static void checkpoint() {
+        if (wal == null) {
+            saveDBToFile();
+            return;
+        }
+        rotateAndSnapshot();
+    }
+
+    private static void snapshot() {
+        if (wal.size() == 0) {
+            return;
+        }
+        rotateAndSnapshot();
+    }
+
+    private static void rotateAndSnapshot() {
+        synchronized (fileLock) {
+            try {
+                wal.rotate();
+                if (writeDBToFile()) {
+                    wal.discardRotated();
+                }
+            } catch (IOException e) {
+                System.out.println("Error rotating write-ahead log: " + e.getMessage());
+            }
         }
     }
 
     public static void readFromFileAndSaveToDB() {
-        writeLock.lock();
+        locks.lockAllWrite();
         try {
-            try (FileReader reader = new FileReader(file)) {
-                Type type = new TypeToken<Map<String, JsonElement>>() {}.getType();
-                Map<String, JsonElement> mapFromFile = gson.fromJson(reader, type);
-                if (mapFromFile != null) {
-                    database.putAll(mapFromFile);
+            try {
+                storage.readSnapshot(file);
+                orderedKeys.clear();
+                storage.forEachKey(orderedKeys::add);
+                if (expirationsFile.exists()) {
+                    try (Reader reader = new FileReader(expirationsFile, StandardCharsets.UTF_8)) {
+                        JsonObject deadlines = gson.fromJson(reader, JsonObject.class);
+                        deadlines.entrySet().forEach(entry -> expirations.put(entry.getKey(), entry.getValue().getAsLong()));
+                    }
+                }
+                if (replicationLog != null && replicationFile.exists()) {
+                    try (Reader reader = new FileReader(replicationFile, StandardCharsets.UTF_8)) {
+                        JsonObject position = gson.fromJson(reader, JsonObject.class);
+                        if (isDurablyLogged() || position.has("clean") && position.get("clean").getAsBoolean()) {
+                            replicationLog.restore(position.get("epoch").getAsString(), position.get("seq").getAsLong());
+                        } else {
+                            System.out.println("Previous run did not stop cleanly, starting a new replication epoch.");
+                        }
+                    }
                 }
             } catch (FileNotFoundException e) {
                 System.out.println("Database file not found, starting with empty database.");
@@ -273,7 +1699,7 @@ public class Main {
                 System.out.println("Error parsing JSON from DB file: " + e.getMessage());
             }
         } finally {
-            writeLock.unlock();
+            locks.unlockAllWrite();
         }
     }
 }
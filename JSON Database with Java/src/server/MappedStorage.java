@@ -0,0 +1,471 @@
+package server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+public class MappedStorage implements Storage {
+
+    private static final int HEADER_BYTES = 8;
+    private static final int SLOT_BYTES = 16;
+    private static final long EMPTY = 0;
+    private static final long DELETED = -1;
+
+    private final long segmentSize;
+    private final int valueThreshold;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+    private File file;
+    private FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long writePosition = 0;
+    private long forcedPosition = 0;
+    private long liveBytes = 0;
+    private long garbageBytes = 0;
+    private long unsyncedBytes = 0;
+
+    private ByteBuffer index;
+    private int indexCapacity;
+    private int indexUsed = 0;
+    private int indexLive = 0;
+    private int size = 0;
+
+    public MappedStorage(long segmentSize, int valueThreshold) {
+        this.segmentSize = segmentSize;
+        this.valueThreshold = valueThreshold;
+        allocateIndex(1024);
+    }
+
+    private void allocateIndex(int capacity) {
+        indexCapacity = capacity;
+        index = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+        indexUsed = 0;
+        indexLive = 0;
+    }
+
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    private int findSlot(byte[] key, long hash) {
+        int mask = indexCapacity - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        int firstDeleted = -1;
+        while (true) {
+            long slotHash = index.getLong(slot * SLOT_BYTES);
+            long offset = index.getLong(slot * SLOT_BYTES + 8);
+            if (slotHash == EMPTY) {
+                return firstDeleted >= 0 ? firstDeleted : slot;
+            }
+            if (offset == DELETED) {
+                if (firstDeleted < 0) {
+                    firstDeleted = slot;
+                }
+            } else if (slotHash == hash && keyMatches(offset, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private long lookup(byte[] key) {
+        int slot = findSlot(key, hash(key));
+        if (index.getLong(slot * SLOT_BYTES) == EMPTY) {
+            return -1;
+        }
+        long offset = index.getLong(slot * SLOT_BYTES + 8);
+        return offset == DELETED ? -1 : offset;
+    }
+
+    private void indexPut(byte[] key, long offset) {
+        if ((indexUsed + 1) * 2 > indexCapacity) {
+            rebuildIndex((indexLive + 1) * 4 <= indexCapacity ? indexCapacity : indexCapacity * 2);
+        }
+        long hash = hash(key);
+        int slot = findSlot(key, hash);
+        if (index.getLong(slot * SLOT_BYTES) == EMPTY) {
+            indexUsed++;
+            indexLive++;
+        } else if (index.getLong(slot * SLOT_BYTES + 8) == DELETED) {
+            indexLive++;
+        }
+        index.putLong(slot * SLOT_BYTES, hash);
+        index.putLong(slot * SLOT_BYTES + 8, offset);
+    }
+
+    private void indexRemove(byte[] key) {
+        int slot = findSlot(key, hash(key));
+        if (index.getLong(slot * SLOT_BYTES) != EMPTY && index.getLong(slot * SLOT_BYTES + 8) != DELETED) {
+            index.putLong(slot * SLOT_BYTES + 8, DELETED);
+            indexLive--;
+        }
+    }
+
+    private void rebuildIndex(int capacity) {
+        ByteBuffer old = index;
+        int oldCapacity = indexCapacity;
+        allocateIndex(capacity);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long offset = old.getLong(slot * SLOT_BYTES + 8);
+            if (old.getLong(slot * SLOT_BYTES) != EMPTY && offset != DELETED) {
+                indexPut(readKey(offset), offset);
+            }
+        }
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        return segments.get((int) (offset / segmentSize));
+    }
+
+    private int position(long offset) {
+        return (int) (offset % segmentSize);
+    }
+
+    private byte[] readKey(long offset) {
+        MappedByteBuffer segment = segment(offset);
+        int position = position(offset) + HEADER_BYTES;
+        byte[] key = new byte[segment.getInt(position)];
+        segment.get(position + 4, key);
+        return key;
+    }
+
+    private boolean keyMatches(long offset, byte[] key) {
+        MappedByteBuffer segment = segment(offset);
+        int position = position(offset) + HEADER_BYTES;
+        if (segment.getInt(position) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (segment.get(position + 4 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readValue(long offset) {
+        MappedByteBuffer segment = segment(offset);
+        int position = position(offset) + HEADER_BYTES;
+        position += 4 + segment.getInt(position);
+        byte[] value = new byte[segment.getInt(position)];
+        segment.get(position + 4, value);
+        return value;
+    }
+
+    private int recordLength(long offset) {
+        return segment(offset).getInt(position(offset)) + HEADER_BYTES;
+    }
+
+    private long append(byte[] key, byte[] value) throws IOException {
+        int payloadLength = 4 + key.length + 4 + (value == null ? 0 : value.length);
+        int recordLength = HEADER_BYTES + payloadLength;
+        if (recordLength > segmentSize) {
+            throw new IllegalArgumentException("Record of " + recordLength + " bytes does not fit a storage segment");
+        }
+        if (position(writePosition) + recordLength > segmentSize) {
+            writePosition = (writePosition / segmentSize + 1) * segmentSize;
+        }
+        while (writePosition / segmentSize >= segments.size()) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentSize, segmentSize));
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+        payload.putInt(key.length).put(key);
+        payload.putInt(value == null ? -1 : value.length);
+        if (value != null) {
+            payload.put(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+
+        MappedByteBuffer segment = segment(writePosition);
+        int position = position(writePosition);
+        segment.putInt(position, payloadLength);
+        segment.putInt(position + 4, (int) crc.getValue());
+        segment.put(position + HEADER_BYTES, payload.array());
+
+        long offset = writePosition;
+        writePosition += recordLength;
+        unsyncedBytes += recordLength;
+        return offset;
+    }
+
+    private void open(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        segments.clear();
+        for (long start = 0; start < fileSize; start += segmentSize) {
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize));
+        }
+        allocateIndex(1024);
+        size = 0;
+        liveBytes = 0;
+        garbageBytes = 0;
+        writePosition = 0;
+        scan();
+        forcedPosition = writePosition;
+    }
+
+    private void scan() {
+        long offset = 0;
+        long end = (long) segments.size() * segmentSize;
+        while (offset < end) {
+            MappedByteBuffer segment = segment(offset);
+            int position = position(offset);
+            int payloadLength = position + HEADER_BYTES <= segmentSize ? segment.getInt(position) : 0;
+            if (payloadLength <= 0 || position + HEADER_BYTES + payloadLength > segmentSize) {
+                long nextSegment = (offset / segmentSize + 1) * segmentSize;
+                if (nextSegment >= end || segment(nextSegment).getInt(0) <= 0) {
+                    break;
+                }
+                offset = nextSegment;
+                continue;
+            }
+            byte[] payload = new byte[payloadLength];
+            segment.get(position + HEADER_BYTES, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != segment.getInt(position + 4)) {
+                System.out.println("Ignoring torn record at offset " + offset + " of " + file.getName());
+                break;
+            }
+            byte[] key = readKey(offset);
+            long previous = lookup(key);
+            if (previous >= 0) {
+                garbageBytes += recordLength(previous);
+                liveBytes -= recordLength(previous);
+                size--;
+            }
+            int recordLength = HEADER_BYTES + payloadLength;
+            ByteBuffer wrapped = ByteBuffer.wrap(payload);
+            wrapped.position(4 + key.length);
+            if (wrapped.getInt() < 0) {
+                indexRemove(key);
+                garbageBytes += recordLength;
+            } else {
+                indexPut(key, offset);
+                liveBytes += recordLength;
+                size++;
+            }
+            offset += recordLength;
+            writePosition = offset;
+        }
+    }
+
+    @Override
+    public JsonElement get(String rootKey) {
+        readLock.lock();
+        try {
+            long offset = lookup(rootKey.getBytes(StandardCharsets.UTF_8));
+            return offset < 0 ? null : BinaryCodec.decode(BinaryCodec.unpack(readValue(offset)));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public JsonElement get(JsonArray keyPath) {
+        byte[] encoded;
+        readLock.lock();
+        try {
+            long offset = lookup(keyPath.get(0).getAsString().getBytes(StandardCharsets.UTF_8));
+            if (offset < 0) {
+                return null;
+            }
+            encoded = readValue(offset);
+        } finally {
+            readLock.unlock();
+        }
+        encoded = BinaryCodec.unpack(encoded);
+        int valueOffset = BinaryCodec.find(encoded, keyPath, 1);
+        return valueOffset < 0 ? null : BinaryCodec.decode(encoded, valueOffset);
+    }
+
+    @Override
+    public Supplier<JsonElement> capture(String rootKey) {
+        byte[] encoded;
+        readLock.lock();
+        try {
+            long offset = lookup(rootKey.getBytes(StandardCharsets.UTF_8));
+            encoded = offset < 0 ? null : readValue(offset);
+        } finally {
+            readLock.unlock();
+        }
+        return () -> encoded == null ? null : BinaryCodec.decode(BinaryCodec.unpack(encoded));
+    }
+
+    @Override
+    public void put(String rootKey, JsonElement value) {
+        byte[] key = rootKey.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = BinaryCodec.pack(BinaryCodec.encode(value), valueThreshold);
+        writeLock.lock();
+        try {
+            long previous = lookup(key);
+            long offset = append(key, encoded);
+            if (previous >= 0) {
+                garbageBytes += recordLength(previous);
+                liveBytes -= recordLength(previous);
+            } else {
+                size++;
+            }
+            liveBytes += recordLength(offset);
+            indexPut(key, offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String rootKey) {
+        byte[] key = rootKey.getBytes(StandardCharsets.UTF_8);
+        writeLock.lock();
+        try {
+            long previous = lookup(key);
+            if (previous < 0) {
+                return false;
+            }
+            long tombstone = append(key, null);
+            garbageBytes += recordLength(previous) + recordLength(tombstone);
+            liveBytes -= recordLength(previous);
+            indexRemove(key);
+            size--;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String rootKey) {
+        readLock.lock();
+        try {
+            return lookup(rootKey.getBytes(StandardCharsets.UTF_8)) >= 0;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        readLock.lock();
+        try {
+            return size;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void forEachKey(Consumer<String> action) {
+        List<String> keys = new ArrayList<>();
+        readLock.lock();
+        try {
+            for (int slot = 0; slot < indexCapacity; slot++) {
+                long offset = index.getLong(slot * SLOT_BYTES + 8);
+                if (index.getLong(slot * SLOT_BYTES) != EMPTY && offset != DELETED) {
+                    keys.add(new String(readKey(offset), StandardCharsets.UTF_8));
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        keys.forEach(action);
+    }
+
+    @Override
+    public String getSnapshotFileName() {
+        return "db.dat";
+    }
+
+    @Override
+    public Snapshot snapshot() throws IOException {
+        writeLock.lock();
+        try {
+            if (garbageBytes > liveBytes && garbageBytes > segmentSize) {
+                compact();
+            }
+            forceWritten();
+            long written = unsyncedBytes;
+            unsyncedBytes = 0;
+            return file -> written;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void forceWritten() {
+        if (forcedPosition >= writePosition) {
+            return;
+        }
+        long last = (writePosition - 1) / segmentSize;
+        for (long segment = forcedPosition / segmentSize; segment <= last; segment++) {
+            long start = Math.max(forcedPosition, segment * segmentSize);
+            long end = Math.min(writePosition, (segment + 1) * segmentSize);
+            segments.get((int) segment).force(position(start), (int) (end - start));
+        }
+        forcedPosition = writePosition;
+    }
+
+    private void compact() throws IOException {
+        File compacted = new File(file.getPath() + ".compact");
+        Files.deleteIfExists(compacted.toPath());
+        MappedStorage target = new MappedStorage(segmentSize, valueThreshold);
+        target.open(compacted);
+        for (int slot = 0; slot < indexCapacity; slot++) {
+            long offset = index.getLong(slot * SLOT_BYTES + 8);
+            if (index.getLong(slot * SLOT_BYTES) != EMPTY && offset != DELETED) {
+                byte[] key = readKey(offset);
+                target.indexPut(key, target.append(key, readValue(offset)));
+            }
+        }
+        for (MappedByteBuffer segment : target.segments) {
+            segment.force();
+        }
+        target.channel.close();
+        channel.close();
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open(file);
+        unsyncedBytes += liveBytes;
+        System.out.println("Compacted " + file.getName() + " to " + liveBytes + " live bytes.");
+    }
+
+    @Override
+    public void readSnapshot(File file) throws IOException {
+        writeLock.lock();
+        try {
+            open(file);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package server;
+
+import com.google.gson.JsonObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Metrics implements MetricsMXBean {
+
+    private static final String OTHER = "other";
+
+    private final Map<String, Histogram> latencyMicros = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Histogram lockWaitMicros = new Histogram();
+    private final Histogram flushMicros = new Histogram();
+    private volatile ThreadPoolExecutor executor = null;
+    private volatile EventLoop eventLoop = null;
+
+    public void bind(ThreadPoolExecutor executor, EventLoop eventLoop) {
+        this.executor = executor;
+        this.eventLoop = eventLoop;
+    }
+
+    public void record(String type, long nanos, Response response) {
+        String command = "Unknown command".equals(response.getReason()) ? OTHER : type;
+        latencyMicros.computeIfAbsent(command, key -> new Histogram()).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+        if (response.getResponse().equals("ERROR")) {
+            errors.computeIfAbsent(command, key -> new LongAdder()).increment();
+        }
+    }
+
+    public void recordLockWait(long nanos) {
+        lockWaitMicros.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public void recordFlush(long nanos) {
+        flushMicros.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    public JsonObject toJson() {
+        JsonObject commands = new JsonObject();
+        new TreeMap<>(latencyMicros).forEach((type, histogram) -> {
+            JsonObject command = new JsonObject();
+            command.addProperty("count", histogram.getCount());
+            LongAdder failed = errors.get(type);
+            command.addProperty("errors", failed == null ? 0 : failed.sum());
+            command.add("latencyMicros", histogram.toJson());
+            commands.add(type, command);
+        });
+        JsonObject json = new JsonObject();
+        json.add("commands", commands);
+        json.add("lockWaitMicros", lockWaitMicros.toJson());
+        json.add("flushMicros", flushMicros.toJson());
+        json.addProperty("executorQueue", getExecutorQueueDepth());
+        json.addProperty("connections", getConnectionCount());
+        json.addProperty("bytesIn", getBytesIn());
+        json.addProperty("bytesOut", getBytesOut());
+        json.addProperty("droppedLogLines", getDroppedLogLines());
+        EventLoop current = eventLoop;
+        if (current != null) {
+            json.add("admission", current.admissionStats());
+        }
+        return json;
+    }
+
+    @Override
+    public long getRequestCount() {
+        long count = 0;
+        for (Histogram histogram : latencyMicros.values()) {
+            count += histogram.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getErrorCount() {
+        long count = 0;
+        for (LongAdder failed : errors.values()) {
+            count += failed.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        latencyMicros.forEach((type, histogram) -> counts.put(type, histogram.getCount()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyMicros() {
+        Map<String, Long> percentiles = new TreeMap<>();
+        latencyMicros.forEach((type, histogram) -> percentiles.put(type, histogram.getPercentile(99)));
+        return percentiles;
+    }
+
+    @Override
+    public long getLockWaitP99Micros() {
+        return lockWaitMicros.getPercentile(99);
+    }
+
+    @Override
+    public long getFlushP99Micros() {
+        return flushMicros.getPercentile(99);
+    }
+
+    @Override
+    public int getExecutorQueueDepth() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getQueue().size();
+    }
+
+    @Override
+    public int getConnectionCount() {
+        EventLoop current = eventLoop;
+        return current == null ? 0 : current.getConnectionCount();
+    }
+
+    @Override
+    public long getBytesIn() {
+        EventLoop current = eventLoop;
+        return current == null ? 0 : current.getBytesIn();
+    }
+
+    @Override
+    public long getBytesOut() {
+        EventLoop current = eventLoop;
+        return current == null ? 0 : current.getBytesOut();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        EventLoop current = eventLoop;
+        return current == null ? 0 : current.getConcurrencyLimit();
+    }
+
+    @Override
+    public long getBusyCount() {
+        EventLoop current = eventLoop;
+        return current == null ? 0 : current.getBusyCount();
+    }
+
+    @Override
+    public long getDroppedLogLines() {
+        return Log.getDropped();
+    }
+}
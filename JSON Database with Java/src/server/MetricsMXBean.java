@@ -0,0 +1,32 @@
+package server;
+
+import java.util.Map;
+
+public interface MetricsMXBean {
+
+    long getRequestCount();
+
+    long getErrorCount();
+
+    Map<String, Long> getRequestCounts();
+
+    Map<String, Long> getP99LatencyMicros();
+
+    long getLockWaitP99Micros();
+
+    long getFlushP99Micros();
+
+    int getExecutorQueueDepth();
+
+    int getConnectionCount();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    int getConcurrencyLimit();
+
+    long getBusyCount();
+
+    long getDroppedLogLines();
+}
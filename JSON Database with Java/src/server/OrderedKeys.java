@@ -0,0 +1,82 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+public class OrderedKeys {
+
+    public record Position(String from, boolean inclusive, String prefix) {
+    }
+
+    public record Page(List<String> keys, String cursor) {
+    }
+
+    private static final Gson gson = new Gson();
+
+    private final ConcurrentSkipListSet<String> keys = new ConcurrentSkipListSet<>();
+
+    public void add(String rootKey) {
+        keys.add(rootKey);
+    }
+
+    public void remove(String rootKey) {
+        keys.remove(rootKey);
+    }
+
+    public void clear() {
+        keys.clear();
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    public Page scan(Position position, int limit, Predicate<String> visible) {
+        String prefix = position.prefix();
+        String from = position.from().compareTo(prefix) < 0 ? prefix : position.from();
+        boolean inclusive = !from.equals(position.from()) || position.inclusive();
+        NavigableSet<String> tail = keys.tailSet(from, inclusive);
+        List<String> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String rootKey : tail) {
+            if (!rootKey.startsWith(prefix)) {
+                break;
+            }
+            if (page.size() == limit) {
+                return new Page(page, encodeCursor(page.get(page.size() - 1), prefix));
+            }
+            if (visible.test(rootKey)) {
+                page.add(rootKey);
+            }
+        }
+        return new Page(page, null);
+    }
+
+    public static Position positionOf(String start, String prefix, String cursor) {
+        if (cursor == null) {
+            return new Position(start == null ? "" : start, true, prefix == null ? "" : prefix);
+        }
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            JsonObject decoded = gson.fromJson(json, JsonObject.class);
+            return new Position(decoded.get("after").getAsString(), false, decoded.get("prefix").getAsString());
+        } catch (IllegalArgumentException | JsonParseException | NullPointerException | UnsupportedOperationException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public static String encodeCursor(String after, String prefix) {
+        JsonObject cursor = new JsonObject();
+        cursor.addProperty("after", after);
+        cursor.addProperty("prefix", prefix);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(gson.toJson(cursor).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,80 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class PeerClient implements Closeable {
+
+    private final Gson gson = new Gson();
+    private final String address;
+    private final int port;
+    private final Queue<Session> idle = new ConcurrentLinkedQueue<>();
+
+    private record Session(Socket socket, DataInputStream input, DataOutputStream output) {
+    }
+
+    public PeerClient(String address, int port) {
+        this.address = address;
+        this.port = port;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public JsonObject send(JsonObject request) throws IOException {
+        Session session = idle.poll();
+        if (session == null) {
+            session = open();
+        }
+        try {
+            byte[] bytes = gson.toJson(request).getBytes(StandardCharsets.UTF_8);
+            session.output().writeInt(bytes.length);
+            session.output().write(bytes);
+            session.output().flush();
+            byte[] response = new byte[session.input().readInt()];
+            session.input().readFully(response);
+            idle.add(session);
+            return gson.fromJson(new String(response, StandardCharsets.UTF_8), JsonObject.class);
+        } catch (IOException e) {
+            session.socket().close();
+            throw e;
+        }
+    }
+
+    private Session open() throws IOException {
+        Socket socket = new Socket(InetAddress.getByName(address), port);
+        socket.setTcpNoDelay(true);
+        DataInputStream input = new DataInputStream(socket.getInputStream());
+        DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+        JsonObject sessionRequest = new JsonObject();
+        sessionRequest.addProperty("type", "session");
+        sessionRequest.addProperty("framing", "length");
+        output.writeUTF(gson.toJson(sessionRequest));
+        output.flush();
+        input.readUTF();
+        return new Session(socket, input, output);
+    }
+
+    @Override
+    public void close() {
+        Session session;
+        while ((session = idle.poll()) != null) {
+            try {
+                session.socket().close();
+            } catch (IOException e) {
+                System.out.println("Error closing peer connection: " + e.getMessage());
+            }
+        }
+    }
+}
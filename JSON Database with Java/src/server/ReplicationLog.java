@@ -0,0 +1,115 @@
+package server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public class ReplicationLog {
+
+    public interface Sink {
+        CompletableFuture<Void> write(JsonObject record) throws IOException;
+    }
+
+    private final JsonObject[] records;
+    private final long[] durableSeqs;
+    private volatile String epoch = UUID.randomUUID().toString();
+    private long lastSeq = 0;
+    private long durableSeq = 0;
+    private long firstSeq = 1;
+
+    public ReplicationLog(int capacity) {
+        this.records = new JsonObject[capacity];
+        this.durableSeqs = new long[capacity];
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    public synchronized long getDurableSeq() {
+        return durableSeq;
+    }
+
+    public synchronized CompletableFuture<Void> append(JsonObject record, Sink sink) throws IOException {
+        long seq = lastSeq + 1;
+        record.addProperty("seq", seq);
+        CompletableFuture<Void> durable = sink.write(record);
+        lastSeq = seq;
+        records[slotOf(seq)] = record;
+        if (durable == null) {
+            durable(seq);
+        } else {
+            durable.whenComplete((ignored, failure) -> {
+                if (failure == null) {
+                    durable(seq);
+                } else {
+                    reset();
+                }
+            });
+        }
+        return durable;
+    }
+
+    private synchronized void durable(long seq) {
+        if (seq < firstSeq) {
+            return;
+        }
+        durableSeqs[slotOf(seq)] = seq;
+        while (durableSeq < lastSeq && durableSeqs[slotOf(durableSeq + 1)] == durableSeq + 1) {
+            durableSeq++;
+        }
+    }
+
+    private int slotOf(long seq) {
+        return (int) (seq % records.length);
+    }
+
+    public synchronized void restore(String epoch, long lastSeq) {
+        this.epoch = epoch;
+        this.lastSeq = lastSeq;
+        this.durableSeq = lastSeq;
+        this.firstSeq = lastSeq + 1;
+    }
+
+    public synchronized void replayed(JsonObject record) {
+        if (!record.has("seq")) {
+            reset();
+            return;
+        }
+        lastSeq = Math.max(lastSeq, record.get("seq").getAsLong());
+        durableSeq = lastSeq;
+        firstSeq = lastSeq + 1;
+    }
+
+    public synchronized void reset() {
+        epoch = UUID.randomUUID().toString();
+        durableSeq = lastSeq;
+        firstSeq = lastSeq + 1;
+    }
+
+    public synchronized JsonObject position() {
+        JsonObject position = new JsonObject();
+        position.addProperty("epoch", epoch);
+        position.addProperty("seq", lastSeq);
+        return position;
+    }
+
+    public synchronized JsonArray read(long fromSeq, int max) {
+        long availableSeq = Math.max(firstSeq, lastSeq - records.length + 1);
+        if (fromSeq < availableSeq || fromSeq > lastSeq + 1) {
+            return null;
+        }
+        JsonArray batch = new JsonArray();
+        for (long seq = fromSeq; seq <= durableSeq && batch.size() < max; seq++) {
+            batch.add(records[slotOf(seq)]);
+        }
+        return batch;
+    }
+}
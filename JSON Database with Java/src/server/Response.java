@@ -6,6 +6,8 @@ public class Response {
     private String response;
     private JsonElement value;
     private String reason;
+    private JsonElement id;
+    private transient String serialized;
 
     public Response(String response, JsonElement value, String reason) {
         this.response = response;
@@ -33,4 +35,20 @@ public class Response {
     public String getReason() {
         return reason;
     }
+
+    public JsonElement getId() {
+        return id;
+    }
+
+    public void setId(JsonElement id) {
+        this.id = id;
+    }
+
+    public String getSerialized() {
+        return serialized;
+    }
+
+    public void setSerialized(String serialized) {
+        this.serialized = serialized;
+    }
 }
@@ -0,0 +1,111 @@
+package server;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class ResponseCache {
+
+    public record Entry(JsonElement value, String json) {
+    }
+
+    private static final int GENERATIONS = 64;
+
+    private final int capacity;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATIONS);
+    private final LinkedHashMap<List<String>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<List<String>>> pathsByRoot = new HashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    public ResponseCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public synchronized Entry get(List<String> path) {
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    public long stamp(List<String> path) {
+        return generations.get(generationOf(path.get(0)));
+    }
+
+    public synchronized void put(List<String> path, long stamp, Entry entry) {
+        if (generations.get(generationOf(path.get(0))) != stamp) {
+            return;
+        }
+        if (entries.put(path, entry) == null) {
+            pathsByRoot.computeIfAbsent(path.get(0), root -> new HashSet<>()).add(path);
+        }
+        if (entries.size() > capacity) {
+            Iterator<List<String>> eldest = entries.keySet().iterator();
+            List<String> evicted = eldest.next();
+            eldest.remove();
+            forget(evicted);
+            evictions++;
+        }
+    }
+
+    public synchronized void invalidate(List<String> written) {
+        generations.incrementAndGet(generationOf(written.get(0)));
+        Set<List<String>> paths = pathsByRoot.get(written.get(0));
+        if (paths == null) {
+            return;
+        }
+        Iterator<List<String>> iterator = paths.iterator();
+        while (iterator.hasNext()) {
+            List<String> path = iterator.next();
+            if (isPrefix(path, written) || isPrefix(written, path)) {
+                entries.remove(path);
+                iterator.remove();
+                invalidations++;
+            }
+        }
+        if (paths.isEmpty()) {
+            pathsByRoot.remove(written.get(0));
+        }
+    }
+
+    private static int generationOf(String rootKey) {
+        return (rootKey.hashCode() & 0x7FFFFFFF) % GENERATIONS;
+    }
+
+    private void forget(List<String> path) {
+        Set<List<String>> paths = pathsByRoot.get(path.get(0));
+        paths.remove(path);
+        if (paths.isEmpty()) {
+            pathsByRoot.remove(path.get(0));
+        }
+    }
+
+    private static boolean isPrefix(List<String> prefix, List<String> path) {
+        return prefix.size() <= path.size() && path.subList(0, prefix.size()).equals(prefix);
+    }
+
+    public synchronized JsonObject stats() {
+        JsonObject stats = new JsonObject();
+        stats.addProperty("entries", entries.size());
+        stats.addProperty("hits", hits);
+        stats.addProperty("misses", misses);
+        stats.addProperty("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.addProperty("evictions", evictions);
+        stats.addProperty("invalidations", invalidations);
+        return stats;
+    }
+}
@@ -0,0 +1,494 @@
+package server;
+
+import com.google.gson.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class Router {
+
+    private static final int REBALANCE_BATCH = 1000;
+    private static final String address = "127.0.0.1";
+    private static final Gson gson = new Gson();
+    private static final Map<Integer, PeerClient> clients = new ConcurrentHashMap<>();
+    private static final ReentrantReadWriteLock rebalanceLock = new ReentrantReadWriteLock();
+    private static volatile HashRing ring;
+    private static EventLoop eventLoop = null;
+
+    public static void main(String[] args) {
+        List<Integer> ports = new ArrayList<>();
+        for (String shard : Config.SHARDS.split(",")) {
+            if (!shard.isBlank()) {
+                ports.add(Integer.parseInt(shard.trim()));
+            }
+        }
+        if (ports.isEmpty()) {
+            System.out.println("No shards configured, set -Djsondb.shards to a list of shard ports.");
+            return;
+        }
+        for (int port : ports) {
+            clients.put(port, new PeerClient(address, port));
+        }
+        ring = new HashRing(ports, Config.RING_VIRTUAL_NODES);
+
+        int threads = Runtime.getRuntime().availableProcessors() * 4;
+        ExecutorService executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Config.ADMISSION_QUEUE));
+        try {
+            eventLoop = new EventLoop(address, Config.PORT, Config.BACKLOG, executor, Router::execute, null);
+            System.out.println("Router started for shards " + ports + "!");
+            eventLoop.run();
+            System.out.println("Router stopped accepting connections.");
+        } catch (IOException e) {
+            System.out.println("Could not start router: " + e.getMessage());
+        } finally {
+            executor.shutdownNow();
+            clients.values().forEach(PeerClient::close);
+        }
+    }
+
+    public static Response execute(JsonObject requestJson) {
+        String type = requestJson.get("type").getAsString();
+        Response response;
+        try {
+            if (type.equals("addShard")) {
+                response = addShard(requestJson.get("value"));
+            } else {
+                rebalanceLock.readLock().lock();
+                try {
+                    response = route(type, requestJson);
+                } finally {
+                    rebalanceLock.readLock().unlock();
+                }
+            }
+        } catch (IOException e) {
+            response = new Response("ERROR", "Shard unavailable: " + e.getMessage());
+        }
+        if (type.equals("exit")) {
+            eventLoop.stop();
+            System.out.println("Router has been stopped, because of 'exit' argument (request).");
+        }
+        response.setId(requestJson.get("id"));
+        return response;
+    }
+
+    private static Response route(String type, JsonObject requestJson) throws IOException {
+        JsonElement keyElement = requestJson.get("key");
+        switch (type) {
+            case "get", "set", "delete", "expire", "expireAt", "ttl", "cas", "incr", "version" -> {
+                return toResponse(clientFor(rootKeyOf(keyElement)).send(requestJson));
+            }
+            case "transaction" -> {
+                return transaction(requestJson);
+            }
+            case "watch", "unwatch" -> {
+                return new Response("ERROR", "Watch the owning shard directly");
+            }
+            case "scan" -> {
+                return scan(requestJson);
+            }
+            case "bulkLoad" -> {
+                return bulkLoad(requestJson.get("value"));
+            }
+            case "mget", "mset", "mdelete" -> {
+                if (keyElement == null || !keyElement.isJsonArray()) {
+                    return toResponse(clients.get(ring.getShards().iterator().next()).send(requestJson));
+                }
+                return scatter(type, keyElement.getAsJsonArray(), requestJson.get("value"));
+            }
+            case "snapshot" -> {
+                if (keyElement == null || !keyElement.isJsonArray()) {
+                    return new Response("ERROR", "Keys are missing or invalid");
+                }
+                return snapshot(keyElement.getAsJsonArray());
+            }
+            case "keys", "query", "createIndex", "stats", "exit" -> {
+                return broadcast(type, requestJson);
+            }
+            default -> {
+                return new Response("ERROR", "Unknown command");
+            }
+        }
+    }
+
+    private static Response transaction(JsonObject requestJson) throws IOException {
+        JsonElement operations = requestJson.get("value");
+        if (operations == null || !operations.isJsonArray() || operations.getAsJsonArray().size() == 0) {
+            return new Response("ERROR", "Operations are missing");
+        }
+        Set<Integer> owners = new HashSet<>();
+        for (JsonElement operation : operations.getAsJsonArray()) {
+            if (!operation.isJsonObject()) {
+                return new Response("ERROR", "Operation must be an object");
+            }
+            owners.add(ring.ownerOf(rootKeyOf(operation.getAsJsonObject().get("key"))));
+        }
+        if (owners.size() > 1) {
+            return new Response("ERROR", "Transaction spans more than one shard");
+        }
+        return toResponse(clients.get(owners.iterator().next()).send(requestJson));
+    }
+
+    private static Response bulkLoad(JsonElement load) throws IOException {
+        if (load == null || !load.isJsonObject()) {
+            return new Response("ERROR", "Bulk load options are missing");
+        }
+        JsonElement records = load.getAsJsonObject().has("records") ? load.getAsJsonObject().get("records") : new JsonArray();
+        if (!records.isJsonArray()) {
+            return new Response("ERROR", "Records must be an array");
+        }
+        boolean flush = load.getAsJsonObject().has("flush") && load.getAsJsonObject().get("flush").getAsBoolean();
+        Map<Integer, JsonArray> recordsByShard = new LinkedHashMap<>();
+        if (flush) {
+            ring.getShards().forEach(shard -> recordsByShard.put(shard, new JsonArray()));
+        }
+        for (JsonElement record : records.getAsJsonArray()) {
+            if (!record.isJsonObject()) {
+                return new Response("ERROR", "Record must be an object");
+            }
+            recordsByShard.computeIfAbsent(ring.ownerOf(rootKeyOf(record.getAsJsonObject().get("key"))), shard -> new JsonArray())
+                    .add(record);
+        }
+        int loaded = 0;
+        for (Map.Entry<Integer, JsonArray> entry : recordsByShard.entrySet()) {
+            JsonObject shardLoad = new JsonObject();
+            shardLoad.add("records", entry.getValue());
+            shardLoad.addProperty("flush", flush);
+            JsonObject request = new JsonObject();
+            request.addProperty("type", "bulkLoad");
+            request.add("value", shardLoad);
+            Response response = toResponse(clients.get(entry.getKey()).send(request));
+            if (!response.getResponse().equals("OK")) {
+                return response;
+            }
+            loaded += response.getValue().getAsJsonObject().get("loaded").getAsInt();
+        }
+        JsonObject result = new JsonObject();
+        result.addProperty("loaded", loaded);
+        return new Response("OK", result, null);
+    }
+
+    private static Response scan(JsonObject requestJson) throws IOException {
+        JsonElement options = requestJson.get("value");
+        Map<String, JsonElement> merged = new TreeMap<>();
+        boolean more = false;
+        for (int shard : ring.getShards()) {
+            Response response = toResponse(clients.get(shard).send(requestJson));
+            if (!response.getResponse().equals("OK")) {
+                return response;
+            }
+            JsonObject page = response.getValue().getAsJsonObject();
+            JsonArray keys = page.getAsJsonArray("keys");
+            JsonArray values = page.has("values") ? page.getAsJsonArray("values") : null;
+            for (int i = 0; i < keys.size(); i++) {
+                merged.put(keys.get(i).getAsString(), values != null ? values.get(i) : JsonNull.INSTANCE);
+            }
+            more |= page.has("cursor") && !page.get("cursor").isJsonNull();
+        }
+        int limit = options != null && options.isJsonObject() && options.getAsJsonObject().has("limit")
+                ? options.getAsJsonObject().get("limit").getAsInt()
+                : Math.min(100, Config.SCAN_MAX_LIMIT);
+        String prefix;
+        if (options == null) {
+            prefix = "";
+        } else if (options.isJsonPrimitive()) {
+            prefix = options.getAsString();
+        } else {
+            JsonObject scanOptions = options.getAsJsonObject();
+            prefix = OrderedKeys.positionOf(null,
+                    scanOptions.has("prefix") ? scanOptions.get("prefix").getAsString() : null,
+                    scanOptions.has("cursor") ? scanOptions.get("cursor").getAsString() : null).prefix();
+        }
+        JsonArray keys = new JsonArray();
+        JsonArray values = new JsonArray();
+        for (Map.Entry<String, JsonElement> entry : merged.entrySet()) {
+            if (keys.size() == limit) {
+                more = true;
+                break;
+            }
+            keys.add(entry.getKey());
+            values.add(entry.getValue());
+        }
+        JsonObject result = new JsonObject();
+        result.add("keys", keys);
+        if (options != null && options.isJsonObject() && options.getAsJsonObject().has("values")
+                && options.getAsJsonObject().get("values").getAsBoolean()) {
+            result.add("values", values);
+        }
+        String last = keys.isEmpty() ? null : keys.get(keys.size() - 1).getAsString();
+        result.addProperty("cursor", more && last != null ? OrderedKeys.encodeCursor(last, prefix) : null);
+        return new Response("OK", result, null);
+    }
+
+    private static String rootKeyOf(JsonElement keyElement) {
+        if (keyElement != null && keyElement.isJsonPrimitive()) {
+            return keyElement.getAsString();
+        }
+        if (keyElement != null && keyElement.isJsonArray() && keyElement.getAsJsonArray().size() > 0
+                && keyElement.getAsJsonArray().get(0).isJsonPrimitive()) {
+            return keyElement.getAsJsonArray().get(0).getAsString();
+        }
+        return "";
+    }
+
+    private static PeerClient clientFor(String rootKey) {
+        return clients.get(ring.ownerOf(rootKey));
+    }
+
+    private static Response scatter(String type, JsonArray keys, JsonElement values) throws IOException {
+        if (type.equals("mset") && (values == null || !values.isJsonArray() || values.getAsJsonArray().size() != keys.size())) {
+            return new Response("ERROR", "Values must be an array matching the keys");
+        }
+        Map<Integer, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            positions.computeIfAbsent(ring.ownerOf(rootKeyOf(keys.get(i))), shard -> new ArrayList<>()).add(i);
+        }
+
+        JsonArray merged = new JsonArray();
+        for (int i = 0; i < keys.size(); i++) {
+            merged.add(JsonNull.INSTANCE);
+        }
+        int deleted = 0;
+        for (Map.Entry<Integer, List<Integer>> entry : positions.entrySet()) {
+            JsonArray shardKeys = new JsonArray();
+            JsonArray shardValues = new JsonArray();
+            for (int position : entry.getValue()) {
+                shardKeys.add(keys.get(position));
+                if (type.equals("mset")) {
+                    shardValues.add(values.getAsJsonArray().get(position));
+                }
+            }
+            JsonObject request = new JsonObject();
+            request.addProperty("type", type);
+            request.add("key", shardKeys);
+            if (type.equals("mset")) {
+                request.add("value", shardValues);
+            }
+            Response response = toResponse(clients.get(entry.getKey()).send(request));
+            if (!response.getResponse().equals("OK")) {
+                return response;
+            }
+            if (type.equals("mget")) {
+                JsonArray shardResult = response.getValue().getAsJsonArray();
+                for (int i = 0; i < shardResult.size(); i++) {
+                    merged.set(entry.getValue().get(i), shardResult.get(i));
+                }
+            } else if (type.equals("mdelete")) {
+                deleted += response.getValue().getAsInt();
+            }
+        }
+        return switch (type) {
+            case "mget" -> new Response("OK", merged, null);
+            case "mdelete" -> new Response("OK", new JsonPrimitive(deleted), null);
+            default -> new Response("OK");
+        };
+    }
+
+    private static Response snapshot(JsonArray keys) throws IOException {
+        Map<Integer, List<Integer>> positions = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            positions.computeIfAbsent(ring.ownerOf(rootKeyOf(keys.get(i))), shard -> new ArrayList<>()).add(i);
+        }
+
+        JsonArray values = new JsonArray();
+        for (int i = 0; i < keys.size(); i++) {
+            values.add(JsonNull.INSTANCE);
+        }
+        JsonObject versions = new JsonObject();
+        JsonObject expirations = new JsonObject();
+        for (Map.Entry<Integer, List<Integer>> entry : positions.entrySet()) {
+            JsonArray shardKeys = new JsonArray();
+            for (int position : entry.getValue()) {
+                shardKeys.add(keys.get(position));
+            }
+            JsonObject request = new JsonObject();
+            request.addProperty("type", "snapshot");
+            request.add("key", shardKeys);
+            Response response = toResponse(clients.get(entry.getKey()).send(request));
+            if (!response.getResponse().equals("OK")) {
+                return response;
+            }
+            JsonObject shardSnapshot = response.getValue().getAsJsonObject();
+            JsonArray shardValues = shardSnapshot.getAsJsonArray("values");
+            for (int i = 0; i < shardValues.size(); i++) {
+                values.set(entry.getValue().get(i), shardValues.get(i));
+            }
+            for (Map.Entry<String, JsonElement> deadline : shardSnapshot.getAsJsonObject("expirations").entrySet()) {
+                expirations.add(deadline.getKey(), deadline.getValue());
+            }
+            versions.add(String.valueOf(entry.getKey()), shardSnapshot.get("version"));
+        }
+        JsonObject result = new JsonObject();
+        result.add("versions", versions);
+        result.add("values", values);
+        result.add("expirations", expirations);
+        return new Response("OK", result, null);
+    }
+
+    private static Response broadcast(String type, JsonObject requestJson) throws IOException {
+        JsonObject perShard = new JsonObject();
+        JsonArray concatenated = new JsonArray();
+        for (int shard : ring.getShards()) {
+            Response response = toResponse(clients.get(shard).send(requestJson));
+            if (!response.getResponse().equals("OK")) {
+                return response;
+            }
+            if (response.getValue() != null) {
+                perShard.add(String.valueOf(shard), response.getValue());
+                if (response.getValue().isJsonArray()) {
+                    concatenated.addAll(response.getValue().getAsJsonArray());
+                }
+            }
+        }
+        if (type.equals("keys") || type.equals("query")) {
+            return new Response("OK", concatenated, null);
+        }
+        return perShard.size() > 0 ? new Response("OK", perShard, null) : new Response("OK");
+    }
+
+    private static Response addShard(JsonElement portElement) throws IOException {
+        if (portElement == null || !portElement.isJsonPrimitive()) {
+            return new Response("ERROR", "Shard port is missing");
+        }
+        int port = portElement.getAsInt();
+        rebalanceLock.writeLock().lock();
+        try {
+            int moved = 0;
+            if (!clients.containsKey(port)) {
+                PeerClient target = new PeerClient(address, port);
+                HashRing next = ring.withShard(port);
+                Set<String> incoming = new HashSet<>();
+                for (int shard : ring.getShards()) {
+                    PeerClient source = clients.get(shard);
+                    JsonArray moving = new JsonArray();
+                    for (JsonElement key : keysOf(source)) {
+                        if (next.ownerOf(key.getAsString()) == port) {
+                            moving.add(key);
+                            incoming.add(key.getAsString());
+                        }
+                    }
+                    for (JsonArray batch : batches(moving)) {
+                        moved += copy(source, target, batch);
+                    }
+                }
+                JsonArray leftovers = new JsonArray();
+                for (JsonElement key : keysOf(target)) {
+                    if (!incoming.contains(key.getAsString())) {
+                        leftovers.add(key);
+                    }
+                }
+                delete(target, leftovers);
+                clients.put(port, target);
+                ring = next;
+            }
+            for (int shard : ring.getShards()) {
+                if (shard == port) {
+                    continue;
+                }
+                PeerClient source = clients.get(shard);
+                JsonArray handedOver = new JsonArray();
+                for (JsonElement key : keysOf(source)) {
+                    if (ring.ownerOf(key.getAsString()) == port) {
+                        handedOver.add(key);
+                    }
+                }
+                delete(source, handedOver);
+            }
+            System.out.println("Added shard " + port + ", moved " + moved + " keys.");
+            return new Response("OK", new JsonPrimitive(moved), null);
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    private static JsonArray keysOf(PeerClient shard) throws IOException {
+        JsonObject listRequest = new JsonObject();
+        listRequest.addProperty("type", "keys");
+        return shard.send(listRequest).getAsJsonArray("value");
+    }
+
+    private static List<JsonArray> batches(JsonArray keys) {
+        List<JsonArray> batches = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += REBALANCE_BATCH) {
+            JsonArray batch = new JsonArray();
+            for (int i = from; i < Math.min(from + REBALANCE_BATCH, keys.size()); i++) {
+                batch.add(keys.get(i));
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private static int copy(PeerClient source, PeerClient target, JsonArray keys) throws IOException {
+        JsonObject getRequest = new JsonObject();
+        getRequest.addProperty("type", "snapshot");
+        getRequest.add("key", keys);
+        JsonObject snapshot = source.send(getRequest).getAsJsonObject("value");
+        JsonArray values = snapshot.getAsJsonArray("values");
+        JsonObject deadlines = snapshot.getAsJsonObject("expirations");
+
+        JsonArray presentKeys = new JsonArray();
+        JsonArray presentValues = new JsonArray();
+        for (int i = 0; i < keys.size(); i++) {
+            if (!values.get(i).isJsonNull()) {
+                presentKeys.add(keys.get(i));
+                presentValues.add(values.get(i));
+            }
+        }
+        if (presentKeys.isEmpty()) {
+            return 0;
+        }
+
+        JsonObject setRequest = new JsonObject();
+        setRequest.addProperty("type", "mset");
+        setRequest.add("key", presentKeys);
+        setRequest.add("value", presentValues);
+        Response stored = toResponse(target.send(setRequest));
+        if (!stored.getResponse().equals("OK")) {
+            throw new IOException("Shard " + target.getPort() + " rejected moved keys: " + stored.getReason());
+        }
+
+        for (JsonElement key : presentKeys) {
+            if (!deadlines.has(key.getAsString())) {
+                continue;
+            }
+            JsonObject expireRequest = new JsonObject();
+            expireRequest.addProperty("type", "expireAt");
+            expireRequest.add("key", key);
+            expireRequest.add("value", deadlines.get(key.getAsString()));
+            Response expiring = toResponse(target.send(expireRequest));
+            if (!expiring.getResponse().equals("OK")) {
+                throw new IOException("Shard " + target.getPort() + " rejected expiry of " + key.getAsString() + ": " + expiring.getReason());
+            }
+        }
+        return presentKeys.size();
+    }
+
+    private static void delete(PeerClient shard, JsonArray keys) throws IOException {
+        for (JsonArray batch : batches(keys)) {
+            JsonObject deleteRequest = new JsonObject();
+            deleteRequest.addProperty("type", "mdelete");
+            deleteRequest.add("key", batch);
+            Response deleted = toResponse(shard.send(deleteRequest));
+            if (!deleted.getResponse().equals("OK")) {
+                throw new IOException("Shard " + shard.getPort() + " rejected deleting moved keys: " + deleted.getReason());
+            }
+        }
+    }
+
+    private static Response toResponse(JsonObject responseJson) {
+        return gson.fromJson(responseJson, Response.class);
+    }
+}
@@ -0,0 +1,169 @@
+package server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class SecondaryIndex {
+
+    private record Bound(JsonPrimitive value, boolean inclusive) {
+    }
+
+    private final JsonArray path;
+    private final TreeMap<JsonPrimitive, Set<String>> entries = new TreeMap<>(SecondaryIndex::compare);
+    private final Map<String, JsonPrimitive> valuesByKey = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public SecondaryIndex(JsonArray path) {
+        this.path = path;
+    }
+
+    public JsonArray getPath() {
+        return path;
+    }
+
+    public void update(String rootKey, JsonElement value) {
+        JsonPrimitive indexed = value != null && value.isJsonPrimitive() ? value.getAsJsonPrimitive() : null;
+        lock.writeLock().lock();
+        try {
+            JsonPrimitive previous = indexed == null ? valuesByKey.remove(rootKey) : valuesByKey.put(rootKey, indexed);
+            if (previous != null) {
+                Set<String> keys = entries.get(previous);
+                keys.remove(rootKey);
+                if (keys.isEmpty()) {
+                    entries.remove(previous);
+                }
+            }
+            if (indexed != null) {
+                entries.computeIfAbsent(indexed, k -> new LinkedHashSet<>()).add(rootKey);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<String> query(JsonObject predicate) {
+        Bound low = null;
+        Bound high = null;
+        int boundRank = -1;
+        for (Map.Entry<String, JsonElement> condition : predicate.entrySet()) {
+            if (!condition.getValue().isJsonPrimitive()) {
+                throw new IllegalArgumentException("Query bound must be a primitive value");
+            }
+            JsonPrimitive bound = condition.getValue().getAsJsonPrimitive();
+            if (boundRank >= 0 && rank(bound) != boundRank) {
+                return new ArrayList<>();
+            }
+            boundRank = rank(bound);
+            switch (condition.getKey()) {
+                case "eq" -> {
+                    low = above(low, new Bound(bound, true));
+                    high = below(high, new Bound(bound, true));
+                }
+                case "gt" -> low = above(low, new Bound(bound, false));
+                case "gte" -> low = above(low, new Bound(bound, true));
+                case "lt" -> high = below(high, new Bound(bound, false));
+                case "lte" -> high = below(high, new Bound(bound, true));
+                default -> throw new IllegalArgumentException("Unknown query operator " + condition.getKey());
+            }
+        }
+        if (boundRank >= 0) {
+            low = above(low, lowestOf(boundRank));
+            high = below(high, highestOf(boundRank));
+        }
+        if (low != null && high != null) {
+            int order = compare(low.value(), high.value());
+            if (order > 0 || order == 0 && !(low.inclusive() && high.inclusive())) {
+                return new ArrayList<>();
+            }
+        }
+        lock.readLock().lock();
+        try {
+            NavigableMap<JsonPrimitive, Set<String>> range = entries;
+            if (low != null && high != null) {
+                range = range.subMap(low.value(), low.inclusive(), high.value(), high.inclusive());
+            } else if (low != null) {
+                range = range.tailMap(low.value(), low.inclusive());
+            }
+            List<String> keys = new ArrayList<>();
+            for (Set<String> matching : range.values()) {
+                keys.addAll(matching);
+            }
+            return keys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return valuesByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Bound above(Bound current, Bound candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        int order = compare(candidate.value(), current.value());
+        return order > 0 || order == 0 && !candidate.inclusive() ? candidate : current;
+    }
+
+    private static Bound below(Bound current, Bound candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        if (candidate == null) {
+            return current;
+        }
+        int order = compare(candidate.value(), current.value());
+        return order < 0 || order == 0 && !candidate.inclusive() ? candidate : current;
+    }
+
+    private static Bound lowestOf(int rank) {
+        return switch (rank) {
+            case 0 -> new Bound(new JsonPrimitive(false), true);
+            case 1 -> new Bound(new JsonPrimitive(true), false);
+            default -> new Bound(new JsonPrimitive(""), true);
+        };
+    }
+
+    private static Bound highestOf(int rank) {
+        return switch (rank) {
+            case 0 -> new Bound(new JsonPrimitive(true), true);
+            case 1 -> new Bound(new JsonPrimitive(""), false);
+            default -> null;
+        };
+    }
+
+    private static int rank(JsonPrimitive value) {
+        if (value.isBoolean()) {
+            return 0;
+        }
+        return value.isNumber() ? 1 : 2;
+    }
+
+    static int compare(JsonPrimitive a, JsonPrimitive b) {
+        int rankA = rank(a);
+        int rankB = rank(b);
+        if (rankA != rankB) {
+            return Integer.compare(rankA, rankB);
+        }
+        if (a.isBoolean()) {
+            return Boolean.compare(a.getAsBoolean(), b.getAsBoolean());
+        }
+        if (a.isNumber()) {
+            return new BigDecimal(a.getAsString()).compareTo(new BigDecimal(b.getAsString()));
+        }
+        return a.getAsString().compareTo(b.getAsString());
+    }
+}
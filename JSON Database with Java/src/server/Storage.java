@@ -0,0 +1,38 @@
+package server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public interface Storage {
+
+    interface Snapshot {
+        long writeTo(File file) throws IOException;
+    }
+
+    JsonElement get(String rootKey);
+
+    JsonElement get(JsonArray keyPath);
+
+    Supplier<JsonElement> capture(String rootKey);
+
+    void put(String rootKey, JsonElement value);
+
+    boolean remove(String rootKey);
+
+    boolean containsKey(String rootKey);
+
+    int size();
+
+    void forEachKey(Consumer<String> action);
+
+    String getSnapshotFileName();
+
+    Snapshot snapshot() throws IOException;
+
+    void readSnapshot(File file) throws IOException;
+}
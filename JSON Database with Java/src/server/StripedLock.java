@@ -0,0 +1,70 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class StripedLock {
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    public StripedLock(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    public ReadWriteLock forKey(String key) {
+        return stripes[indexOf(key)];
+    }
+
+    public List<ReadWriteLock> forKeys(Collection<String> keys) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (String key : keys) {
+            indexes.add(indexOf(key));
+        }
+        List<ReadWriteLock> locks = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            locks.add(stripes[index]);
+        }
+        return locks;
+    }
+
+    private int indexOf(String key) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return hash & (stripes.length - 1);
+    }
+
+    public void lockAllRead() {
+        for (ReentrantReadWriteLock stripe : stripes) {
+            stripe.readLock().lock();
+        }
+    }
+
+    public void unlockAllRead() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].readLock().unlock();
+        }
+    }
+
+    public void lockAllWrite() {
+        for (ReentrantReadWriteLock stripe : stripes) {
+            stripe.writeLock().lock();
+        }
+    }
+
+    public void unlockAllWrite() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package server;
+
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+public class Subscriber {
+
+    public enum Overflow {
+        DROP, COALESCE
+    }
+
+    private final int capacity;
+    private final Overflow overflow;
+    private final Runnable wakeup;
+    private final LinkedHashMap<Object, Response> pending = new LinkedHashMap<>();
+    private long sequence = 0;
+    private long dropped = 0;
+    private boolean notified = false;
+
+    public Subscriber(int capacity, Overflow overflow, Runnable wakeup) {
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.wakeup = wakeup;
+    }
+
+    public boolean offer(Object watch, List<String> path, Response event) {
+        boolean accepted = true;
+        boolean wake;
+        synchronized (this) {
+            Object slot = overflow == Overflow.COALESCE ? List.of(watch, path) : sequence++;
+            if (overflow == Overflow.COALESCE && pending.remove(slot) != null) {
+                pending.put(slot, event);
+                return true;
+            }
+            if (pending.size() >= capacity) {
+                dropped++;
+                accepted = false;
+                if (overflow == Overflow.DROP) {
+                    return false;
+                }
+                Iterator<Response> eldest = pending.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+            pending.put(slot, event);
+            wake = !notified;
+            notified = true;
+        }
+        if (wake) {
+            wakeup.run();
+        }
+        return accepted;
+    }
+
+    public synchronized List<Response> drain(int max) {
+        List<Response> events = new ArrayList<>();
+        if (dropped > 0) {
+            JsonObject overflowed = new JsonObject();
+            overflowed.addProperty("dropped", dropped);
+            events.add(new Response("OVERFLOW", overflowed, null));
+            dropped = 0;
+        }
+        Iterator<Response> iterator = pending.values().iterator();
+        while (iterator.hasNext() && events.size() < max) {
+            events.add(iterator.next());
+            iterator.remove();
+        }
+        if (pending.isEmpty()) {
+            notified = false;
+        }
+        return events;
+    }
+}
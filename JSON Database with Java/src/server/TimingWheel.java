@@ -0,0 +1,76 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimingWheel {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 6;
+
+    public record Timer(String key, long deadline) {
+    }
+
+    private final long tickMillis;
+    private final List<List<List<Timer>>> wheels = new ArrayList<>();
+    private long currentTick;
+    private int size = 0;
+
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        for (int level = 0; level < LEVELS; level++) {
+            List<List<Timer>> slots = new ArrayList<>(SLOTS);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                slots.add(new ArrayList<>());
+            }
+            wheels.add(slots);
+        }
+    }
+
+    public synchronized void schedule(String key, long deadline) {
+        place(new Timer(key, deadline));
+        size++;
+    }
+
+    private void place(Timer timer) {
+        long tick = Math.max(timer.deadline() / tickMillis, currentTick);
+        long delta = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        wheels.get(level).get(slot).add(timer);
+    }
+
+    public synchronized List<Timer> advance(long nowMillis) {
+        List<Timer> due = new ArrayList<>();
+        long target = nowMillis / tickMillis;
+        List<Timer> current = wheels.get(0).get((int) (currentTick & (SLOTS - 1)));
+        due.addAll(current);
+        current.clear();
+        while (currentTick < target) {
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    continue;
+                }
+                List<Timer> slot = wheels.get(level).get((int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1)));
+                List<Timer> cascading = new ArrayList<>(slot);
+                slot.clear();
+                cascading.forEach(this::place);
+            }
+            List<Timer> slot = wheels.get(0).get((int) (currentTick & (SLOTS - 1)));
+            due.addAll(slot);
+            slot.clear();
+        }
+        size -= due.size();
+        return due;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,189 @@
+package server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+public class VersionedRoots {
+
+    private record Version(long version, Supplier<JsonElement> value, long supersededBy, Version older) {
+    }
+
+    private final Storage storage;
+    private final long baseVersion;
+    private final AtomicLong clock;
+    private volatile long published;
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final Map<String, Version> history = new ConcurrentHashMap<>();
+    private final TreeMap<Long, Integer> readers = new TreeMap<>();
+
+    public VersionedRoots(Storage storage, long baseVersion) {
+        this.storage = storage;
+        this.baseVersion = baseVersion;
+        this.clock = new AtomicLong(baseVersion);
+        this.published = baseVersion;
+    }
+
+    public long begin(Collection<String> rootKeys) {
+        long version = clock.incrementAndGet();
+        for (String rootKey : rootKeys) {
+            long current = versionOf(rootKey);
+            Supplier<JsonElement> value = storage.capture(rootKey);
+            history.compute(rootKey, (key, older) -> new Version(current, value, version, older));
+            versions.put(rootKey, -version);
+        }
+        return version;
+    }
+
+    public void commit(Collection<String> rootKeys, long version, boolean changed) {
+        for (String rootKey : rootKeys) {
+            if (changed) {
+                versions.put(rootKey, version);
+            } else {
+                Version pushed = history.get(rootKey);
+                versions.put(rootKey, pushed.version());
+                history.computeIfPresent(rootKey, (key, chain) -> chain.supersededBy() == version ? chain.older() : chain);
+            }
+        }
+        while (published != version - 1) {
+            Thread.yield();
+        }
+        published = version;
+        long horizon = horizon();
+        for (String rootKey : rootKeys) {
+            prune(rootKey, horizon);
+        }
+    }
+
+    public long versionOf(String rootKey) {
+        Long version = versions.get(rootKey);
+        if (version == null) {
+            return baseVersion;
+        }
+        if (version < 0) {
+            Version pushed = history.get(rootKey);
+            if (pushed != null && pushed.supersededBy() == -version) {
+                return pushed.version();
+            }
+        }
+        return version;
+    }
+
+    public JsonElement previous(String rootKey, long version) {
+        Version pushed = history.get(rootKey);
+        return pushed != null && pushed.supersededBy() == version ? pushed.value().get() : null;
+    }
+
+    public JsonElement latest(String rootKey) {
+        return latest(rootKey, null);
+    }
+
+    public JsonElement latest(JsonArray keyPath) {
+        return latest(keyPath.get(0).getAsString(), keyPath);
+    }
+
+    private JsonElement latest(String rootKey, JsonArray keyPath) {
+        while (true) {
+            Long before = versions.get(rootKey);
+            if (before != null && before < 0) {
+                Version pushed = history.get(rootKey);
+                if (pushed != null && pushed.supersededBy() == -before) {
+                    return keyPath == null ? pushed.value().get() : valueAt(pushed.value().get(), keyPath);
+                }
+                continue;
+            }
+            JsonElement value = keyPath == null ? storage.get(rootKey) : storage.get(keyPath);
+            if (Objects.equals(before, versions.get(rootKey))) {
+                return value;
+            }
+        }
+    }
+
+    private static JsonElement valueAt(JsonElement root, JsonArray keyPath) {
+        JsonElement value = root;
+        for (int i = 1; i < keyPath.size() && value != null; i++) {
+            value = value.isJsonObject() ? value.getAsJsonObject().get(keyPath.get(i).getAsString()) : null;
+        }
+        return value;
+    }
+
+    public long openSnapshot() {
+        synchronized (readers) {
+            long snapshot = published;
+            readers.merge(snapshot, 1, Integer::sum);
+            return snapshot;
+        }
+    }
+
+    public void closeSnapshot(long snapshot) {
+        boolean oldest;
+        synchronized (readers) {
+            oldest = readers.firstKey() == snapshot;
+            readers.computeIfPresent(snapshot, (key, count) -> count == 1 ? null : count - 1);
+        }
+        if (oldest && !history.isEmpty()) {
+            long horizon = horizon();
+            history.keySet().forEach(rootKey -> prune(rootKey, horizon));
+        }
+    }
+
+    public JsonElement read(String rootKey, long snapshot) {
+        while (true) {
+            Long before = versions.get(rootKey);
+            JsonElement value = storage.get(rootKey);
+            Long after = versions.get(rootKey);
+            if (!Objects.equals(before, after)) {
+                continue;
+            }
+            long version = before == null ? baseVersion : before;
+            if (version > 0 && version <= snapshot) {
+                return value;
+            }
+            for (Version older = history.get(rootKey); older != null; older = older.older()) {
+                if (older.version() <= snapshot) {
+                    return older.value().get();
+                }
+            }
+            return null;
+        }
+    }
+
+    public long getPublished() {
+        return published;
+    }
+
+    public int historySize() {
+        return history.size();
+    }
+
+    private long horizon() {
+        synchronized (readers) {
+            return readers.isEmpty() ? published : Math.min(readers.firstKey(), published);
+        }
+    }
+
+    private void prune(String rootKey, long horizon) {
+        Version remaining = history.computeIfPresent(rootKey, (key, chain) -> trim(chain, horizon));
+        if (remaining == null) {
+            Long version = versions.get(rootKey);
+            if (version != null && version > 0 && version <= horizon && !storage.containsKey(rootKey)) {
+                versions.remove(rootKey, version);
+            }
+        }
+    }
+
+    private static Version trim(Version chain, long horizon) {
+        if (chain == null || chain.supersededBy() <= horizon) {
+            return null;
+        }
+        Version older = trim(chain.older(), horizon);
+        return older == chain.older() ? chain : new Version(chain.version(), chain.value(), chain.supersededBy(), older);
+    }
+}
@@ -0,0 +1,159 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Watchers {
+
+    private record Watch(List<String> path, JsonElement id, Subscriber subscriber) {
+    }
+
+    private final Gson gson = new Gson();
+    private final Map<String, List<Watch>> watchesByRoot = new ConcurrentHashMap<>();
+    private final Map<Subscriber, List<Watch>> watchesBySubscriber = new ConcurrentHashMap<>();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public static List<String> pathOf(JsonElement keyElement) {
+        if (keyElement == null) {
+            return null;
+        }
+        if (keyElement.isJsonPrimitive()) {
+            return List.of(keyElement.getAsString());
+        }
+        if (!keyElement.isJsonArray() || keyElement.getAsJsonArray().size() == 0) {
+            return null;
+        }
+        List<String> path = new ArrayList<>();
+        for (JsonElement segment : keyElement.getAsJsonArray()) {
+            if (!segment.isJsonPrimitive()) {
+                return null;
+            }
+            path.add(segment.getAsString());
+        }
+        return List.copyOf(path);
+    }
+
+    public void watch(List<String> path, JsonElement id, Subscriber subscriber) {
+        Watch watch = new Watch(path, id, subscriber);
+        watchesByRoot.compute(path.get(0), (root, watches) -> {
+            List<Watch> updated = watches != null ? watches : new CopyOnWriteArrayList<>();
+            updated.add(watch);
+            return updated;
+        });
+        watchesBySubscriber.computeIfAbsent(subscriber, key -> new CopyOnWriteArrayList<>()).add(watch);
+    }
+
+    public int unwatch(Subscriber subscriber, List<String> path) {
+        List<Watch> owned = watchesBySubscriber.get(subscriber);
+        if (owned == null) {
+            return 0;
+        }
+        int removed = 0;
+        for (Watch watch : owned) {
+            if (watch.path().equals(path)) {
+                owned.remove(watch);
+                remove(watch);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public void unwatchAll(Subscriber subscriber) {
+        List<Watch> owned = watchesBySubscriber.remove(subscriber);
+        if (owned != null) {
+            owned.forEach(this::remove);
+        }
+    }
+
+    private void remove(Watch watch) {
+        watchesByRoot.computeIfPresent(watch.path().get(0), (root, watches) -> {
+            watches.remove(watch);
+            return watches.isEmpty() ? null : watches;
+        });
+    }
+
+    public boolean isEmpty() {
+        return watchesByRoot.isEmpty();
+    }
+
+    public void publish(JsonObject record) {
+        String type = record.get("type").getAsString();
+        switch (type) {
+            case "set", "delete" -> changed(type, record.get("key"), record.get("value"));
+            case "mset", "mdelete" -> {
+                JsonArray keys = record.getAsJsonArray("key");
+                for (int i = 0; i < keys.size(); i++) {
+                    JsonElement value = type.equals("mset") ? record.getAsJsonArray("value").get(i) : null;
+                    changed(type.substring(1), keys.get(i), value);
+                }
+            }
+            case "transaction" -> {
+                for (JsonElement element : record.getAsJsonArray("value")) {
+                    JsonObject operation = element.getAsJsonObject();
+                    changed(operation.get("type").getAsString(), operation.get("key"), operation.get("value"));
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private void changed(String type, JsonElement keyElement, JsonElement value) {
+        List<String> path = pathOf(keyElement);
+        List<Watch> watches = path != null ? watchesByRoot.get(path.get(0)) : null;
+        if (watches == null) {
+            return;
+        }
+        JsonObject change = null;
+        String json = null;
+        for (Watch watch : watches) {
+            if (!isPrefix(watch.path(), path) && !isPrefix(path, watch.path())) {
+                continue;
+            }
+            if (change == null) {
+                change = new JsonObject();
+                change.addProperty("type", type);
+                change.add("key", keyElement);
+                if (value != null) {
+                    change.add("value", value);
+                }
+                json = gson.toJson(new Response("EVENT", change, null));
+            }
+            Response event = new Response("EVENT", change, null);
+            event.setSerialized(json);
+            event.setId(watch.id());
+            events.increment();
+            if (!watch.subscriber().offer(watch, path, event)) {
+                dropped.increment();
+            }
+        }
+    }
+
+    private static boolean isPrefix(List<String> prefix, List<String> path) {
+        return prefix.size() <= path.size() && path.subList(0, prefix.size()).equals(prefix);
+    }
+
+    public JsonObject stats() {
+        JsonObject stats = new JsonObject();
+        int watches = 0;
+        for (List<Watch> owned : watchesBySubscriber.values()) {
+            watches += owned.size();
+        }
+        stats.addProperty("subscribers", watchesBySubscriber.size());
+        stats.addProperty("watches", watches);
+        stats.addProperty("events", events.sum());
+        stats.addProperty("dropped", dropped.sum());
+        return stats;
+    }
+}
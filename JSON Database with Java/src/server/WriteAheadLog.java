@@ -0,0 +1,230 @@
+package server;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class WriteAheadLog implements Closeable {
+
+    public enum SyncPolicy {
+        ALWAYS, INTERVAL, NONE
+    }
+
+    private final File file;
+    private final File rotatedFile;
+    private final SyncPolicy syncPolicy;
+    private final Gson gson = new Gson();
+    private FileOutputStream stream;
+    private Writer writer;
+    private volatile boolean dirty = false;
+    private CompletableFuture<Void> unsynced = null;
+    private ScheduledExecutorService syncer = null;
+
+    public WriteAheadLog(File file, SyncPolicy syncPolicy, long syncIntervalMs) throws IOException {
+        this.file = file;
+        this.rotatedFile = new File(file.getPath() + ".1");
+        this.syncPolicy = syncPolicy;
+        open(true);
+        if (syncPolicy == SyncPolicy.INTERVAL) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void open(boolean append) throws IOException {
+        stream = new FileOutputStream(file, append);
+        writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+    }
+
+    public void append(JsonObject record) throws IOException {
+        append(record, true);
+    }
+
+    public CompletableFuture<Void> append(JsonObject record, boolean sync) throws IOException {
+        CompletableFuture<Void> synced;
+        synchronized (this) {
+            writer.write(gson.toJson(record));
+            writer.write('\n');
+            writer.flush();
+            if (!sync || syncPolicy != SyncPolicy.ALWAYS) {
+                dirty = true;
+                if (syncPolicy == SyncPolicy.NONE) {
+                    return null;
+                }
+                if (unsynced == null) {
+                    unsynced = new CompletableFuture<>();
+                }
+                return unsynced;
+            }
+            synced = force();
+        }
+        complete(synced);
+        return null;
+    }
+
+    public String encode(JsonObject record) {
+        return gson.toJson(record);
+    }
+
+    public void appendAll(List<String> encodedRecords) throws IOException {
+        CompletableFuture<Void> synced = null;
+        synchronized (this) {
+            for (String encodedRecord : encodedRecords) {
+                writer.write(encodedRecord);
+                writer.write('\n');
+            }
+            writer.flush();
+            if (syncPolicy == SyncPolicy.NONE) {
+                dirty = true;
+            } else {
+                synced = force();
+            }
+        }
+        complete(synced);
+    }
+
+    public void sync() throws IOException {
+        CompletableFuture<Void> synced;
+        synchronized (this) {
+            synced = force();
+        }
+        complete(synced);
+    }
+
+    private CompletableFuture<Void> force() throws IOException {
+        writer.flush();
+        stream.getFD().sync();
+        dirty = false;
+        CompletableFuture<Void> synced = unsynced;
+        unsynced = null;
+        return synced;
+    }
+
+    private static void complete(CompletableFuture<Void> synced) {
+        if (synced != null) {
+            synced.complete(null);
+        }
+    }
+
+    private void syncQuietly() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            sync();
+        } catch (IOException e) {
+            System.out.println("Error syncing write-ahead log: " + e.getMessage());
+        }
+    }
+
+    public int replay(Consumer<JsonObject> consumer) throws IOException {
+        int count = 0;
+        if (rotatedFile.exists()) {
+            count += replay(rotatedFile, consumer);
+        }
+        return count + replay(file, consumer);
+    }
+
+    private int replay(File source, Consumer<JsonObject> consumer) throws IOException {
+        int count = 0;
+        long validLength = 0;
+        try (InputStream input = new BufferedInputStream(new FileInputStream(source), 1 << 16)) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = 0;
+            int next;
+            while ((next = input.read()) != -1) {
+                offset++;
+                if (next != '\n') {
+                    line.write(next);
+                    continue;
+                }
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                if (!text.isBlank()) {
+                    JsonObject record;
+                    try {
+                        record = gson.fromJson(text, JsonObject.class);
+                    } catch (JsonParseException e) {
+                        System.out.println("Ignoring torn write-ahead log record: " + e.getMessage());
+                        break;
+                    }
+                    if (record == null) {
+                        break;
+                    }
+                    consumer.accept(record);
+                    count++;
+                }
+                validLength = offset;
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading write-ahead log: " + e.getMessage());
+            return count;
+        }
+        if (validLength < source.length()) {
+            truncate(source, validLength);
+        }
+        return count;
+    }
+
+    private synchronized void truncate(File source, long validLength) throws IOException {
+        System.out.println("Truncating " + (source.length() - validLength) + " torn bytes from " + source.getName() + ".");
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(validLength);
+            channel.force(true);
+        }
+    }
+
+    public void rotate() throws IOException {
+        CompletableFuture<Void> synced;
+        synchronized (this) {
+            synced = force();
+            writer.close();
+            if (rotatedFile.exists()) {
+                Files.write(rotatedFile.toPath(), Files.readAllBytes(file.toPath()), StandardOpenOption.APPEND);
+            } else {
+                Files.move(file.toPath(), rotatedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            open(false);
+            stream.getFD().sync();
+        }
+        complete(synced);
+    }
+
+    public void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedFile.toPath());
+    }
+
+    public synchronized long size() {
+        return file.length() + rotatedFile.length();
+    }
+
+    @Override
+    public void close() throws IOException {
+        CompletableFuture<Void> synced;
+        synchronized (this) {
+            if (syncer != null) {
+                syncer.shutdownNow();
+            }
+            synced = force();
+            writer.close();
+        }
+        complete(synced);
+    }
+}
@@ -0,0 +1,134 @@
+package tools;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import server.BinaryStorage;
+import server.Config;
+import server.JsonStorage;
+import server.Main;
+import server.Response;
+import server.Storage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+public class Export {
+
+    private static final int THREADS = Integer.getInteger("export.threads", Runtime.getRuntime().availableProcessors());
+    private static final Gson gson = new Gson();
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: tools.Export <file> [ndjson|native]");
+            return;
+        }
+        File output = new File(args[0]);
+        String format = args.length > 1 ? args[1] : output.getName().contains(".ndjson") ? "ndjson" : "native";
+
+        if (!Main.openStorage()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long exported = 0;
+        try {
+            exported = format.equals("ndjson") ? exportLines(output) : exportSnapshot(output);
+        } catch (IOException e) {
+            System.out.println("Error writing " + output + ": " + e.getMessage());
+        } catch (ExecutionException e) {
+            System.out.println("Error encoding records: " + e.getCause().getMessage());
+        } finally {
+            Main.closeStorage();
+        }
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        System.out.printf("Exported %d keys in %d ms, %d keys/s%n", exported, millis, exported * 1000 / millis);
+    }
+
+    private static long exportLines(File output) throws IOException, InterruptedException, ExecutionException {
+        ExecutorService encoders = Executors.newFixedThreadPool(THREADS);
+        Queue<Future<String>> encoded = new ArrayDeque<>();
+        long exported = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(open(output), StandardCharsets.UTF_8), 1 << 20)) {
+            String cursor = null;
+            do {
+                JsonObject page = nextPage(cursor);
+                JsonArray keys = page.getAsJsonArray("keys");
+                JsonArray values = page.getAsJsonArray("values");
+                exported += keys.size();
+                encoded.add(encoders.submit(() -> encode(keys, values)));
+                while (encoded.size() > THREADS * 2 || !encoded.isEmpty() && encoded.peek().isDone()) {
+                    writer.write(encoded.poll().get());
+                }
+                cursor = page.has("cursor") && !page.get("cursor").isJsonNull() ? page.get("cursor").getAsString() : null;
+            } while (cursor != null);
+            while (!encoded.isEmpty()) {
+                writer.write(encoded.poll().get());
+            }
+        } finally {
+            encoders.shutdownNow();
+        }
+        return exported;
+    }
+
+    private static long exportSnapshot(File output) throws IOException {
+        Storage target = output.getName().contains(".bin")
+                ? new BinaryStorage(0, output.getName().endsWith(".gz"))
+                : new JsonStorage(output.getName().endsWith(".gz"));
+        String cursor = null;
+        do {
+            JsonObject page = nextPage(cursor);
+            JsonArray keys = page.getAsJsonArray("keys");
+            JsonArray values = page.getAsJsonArray("values");
+            for (int i = 0; i < keys.size(); i++) {
+                target.put(keys.get(i).getAsString(), values.get(i));
+            }
+            cursor = page.has("cursor") && !page.get("cursor").isJsonNull() ? page.get("cursor").getAsString() : null;
+        } while (cursor != null);
+        target.snapshot().writeTo(output);
+        return target.size();
+    }
+
+    private static JsonObject nextPage(String cursor) throws IOException {
+        JsonObject options = new JsonObject();
+        options.addProperty("limit", Config.SCAN_MAX_LIMIT);
+        options.addProperty("values", true);
+        if (cursor != null) {
+            options.addProperty("cursor", cursor);
+        }
+        Response response = Main.handleRequest("scan", null, options);
+        if (!response.getResponse().equals("OK")) {
+            throw new IOException(response.getReason());
+        }
+        return response.getValue().getAsJsonObject();
+    }
+
+    private static String encode(JsonArray keys, JsonArray values) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            JsonObject record = new JsonObject();
+            record.add("key", keys.get(i));
+            record.add("value", values.get(i));
+            lines.append(gson.toJson(record)).append('\n');
+        }
+        return lines.toString();
+    }
+
+    private static OutputStream open(File output) throws IOException {
+        OutputStream stream = new FileOutputStream(output);
+        return output.getName().endsWith(".gz") ? new GZIPOutputStream(stream, 1 << 16) : stream;
+    }
+}
@@ -0,0 +1,180 @@
+package tools;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import server.BinaryStorage;
+import server.Compression;
+import server.JsonStorage;
+import server.Main;
+import server.Storage;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Import {
+
+    private static final int BATCH = Integer.getInteger("import.batch", 10_000);
+    private static final int THREADS = Integer.getInteger("import.threads", Runtime.getRuntime().availableProcessors());
+
+    private static final AtomicLong loaded = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: tools.Import <file> [ndjson|native]");
+            return;
+        }
+        File input = new File(args[0]);
+        String format = args.length > 1 ? args[1] : input.getName().contains(".ndjson") ? "ndjson" : "native";
+
+        if (!Main.openStorage()) {
+            return;
+        }
+        ExecutorService parsers = Executors.newFixedThreadPool(THREADS);
+        Semaphore pending = new Semaphore(THREADS * 2);
+        long start = System.nanoTime();
+        try {
+            if (format.equals("ndjson")) {
+                importLines(input, parsers, pending);
+            } else {
+                importSnapshot(input, parsers, pending);
+            }
+        } catch (IOException | JsonParseException e) {
+            System.out.println("Error reading " + input + ": " + e.getMessage());
+        } finally {
+            parsers.shutdown();
+            parsers.awaitTermination(1, TimeUnit.DAYS);
+        }
+        Main.checkpoint();
+        Main.closeStorage();
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        System.out.printf("Imported %d records (%d rejected) in %d ms, %d keys/s%n",
+                loaded.get(), rejected.get(), millis, loaded.get() * 1000 / millis);
+    }
+
+    private static void importLines(File input, ExecutorService parsers, Semaphore pending) throws IOException, InterruptedException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Compression.open(input), StandardCharsets.UTF_8), 1 << 20)) {
+            List<String> batch = new ArrayList<>(BATCH);
+            long lineNumber = 0;
+            long firstLine = 1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                batch.add(line);
+                if (batch.size() == BATCH) {
+                    submit(parsers, pending, batch, firstLine);
+                    batch = new ArrayList<>(BATCH);
+                    firstLine = lineNumber + 1;
+                }
+            }
+            if (!batch.isEmpty()) {
+                submit(parsers, pending, batch, firstLine);
+            }
+        }
+    }
+
+    private static void submit(ExecutorService parsers, Semaphore pending, List<String> lines, long firstLine) throws InterruptedException {
+        pending.acquire();
+        parsers.execute(() -> {
+            try {
+                JsonArray keys = new JsonArray(lines.size());
+                JsonArray values = new JsonArray(lines.size());
+                for (int i = 0; i < lines.size(); i++) {
+                    String line = lines.get(i);
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+                        if (!record.has("key") || !record.has("value")) {
+                            throw new JsonParseException("key or value is missing");
+                        }
+                        if (!isKey(record.get("key"))) {
+                            throw new JsonParseException("invalid key format");
+                        }
+                        keys.add(record.get("key"));
+                        values.add(record.get("value"));
+                    } catch (JsonParseException | IllegalStateException e) {
+                        reject(firstLine + i, e instanceof JsonParseException && e.getCause() == null ? e.getMessage() : "malformed record");
+                    }
+                }
+                load(keys, values);
+            } finally {
+                pending.release();
+            }
+        });
+    }
+
+    private static void importSnapshot(File input, ExecutorService parsers, Semaphore pending) throws IOException, InterruptedException {
+        Storage source = input.getName().contains(".bin") ? new BinaryStorage(0, false) : new JsonStorage(false);
+        source.readSnapshot(input);
+        List<String> rootKeys = new ArrayList<>(source.size());
+        source.forEachKey(rootKeys::add);
+        for (int from = 0; from < rootKeys.size(); from += BATCH) {
+            List<String> batch = rootKeys.subList(from, Math.min(from + BATCH, rootKeys.size()));
+            pending.acquire();
+            parsers.execute(() -> {
+                try {
+                    JsonArray keys = new JsonArray(batch.size());
+                    JsonArray values = new JsonArray(batch.size());
+                    for (String rootKey : batch) {
+                        JsonElement value = source.get(rootKey);
+                        if (value != null) {
+                            keys.add(rootKey);
+                            values.add(value);
+                        }
+                    }
+                    load(keys, values);
+                } finally {
+                    pending.release();
+                }
+            });
+        }
+    }
+
+    private static boolean isKey(JsonElement key) {
+        if (key.isJsonPrimitive()) {
+            return true;
+        }
+        if (!key.isJsonArray() || key.getAsJsonArray().isEmpty()) {
+            return false;
+        }
+        for (JsonElement segment : key.getAsJsonArray()) {
+            if (!segment.isJsonPrimitive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void load(JsonArray keys, JsonArray values) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            loaded.addAndGet(Main.load(keys, values));
+        } catch (RuntimeException e) {
+            System.out.println("Error loading batch: " + e.getMessage());
+            rejected.addAndGet(keys.size());
+        }
+    }
+
+    private static void reject(long lineNumber, String reason) {
+        if (rejected.incrementAndGet() <= 10) {
+            System.out.println("Skipping line " + lineNumber + ": " + reason);
+        }
+    }
+}
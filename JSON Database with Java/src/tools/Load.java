@@ -0,0 +1,165 @@
+package tools;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import server.Compression;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Load {
+
+    private static final int BUSY_RETRIES = 20;
+    private static final long BUSY_BACKOFF_MS = 10;
+    private static final List<String> END = List.of();
+    private static final Gson gson = new Gson();
+
+    private static final AtomicLong loaded = new AtomicLong();
+    private static volatile String failure = null;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: tools.Load <file.ndjson> [connections] [batch]");
+            return;
+        }
+        File source = new File(args[0]);
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        String address = System.getProperty("jsondb.address", "127.0.0.1");
+        int port = Integer.getInteger("jsondb.port", 23456);
+
+        BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(connections * 2);
+        List<Thread> senders = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            Thread sender = new Thread(() -> send(address, port, batches));
+            senders.add(sender);
+            sender.start();
+        }
+
+        long start = System.nanoTime();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Compression.open(source), StandardCharsets.UTF_8), 1 << 20)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            String line;
+            while ((line = reader.readLine()) != null && failure == null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                batch.add(line);
+                if (batch.size() == batchSize) {
+                    batches.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.put(batch);
+            }
+        } catch (IOException e) {
+            failure = "Error reading " + source + ": " + e.getMessage();
+        }
+        for (int c = 0; c < connections; c++) {
+            batches.put(END);
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        if (loaded.get() > 0) {
+            try (Socket socket = new Socket(InetAddress.getByName(address), port)) {
+                DataInputStream input = openSession(socket);
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                String response = exchange(input, output, "{\"type\":\"bulkLoad\",\"value\":{\"flush\":true}}");
+                if (!response.contains("\"OK\"")) {
+                    System.out.println("Flush failed: " + response);
+                }
+            } catch (IOException e) {
+                System.out.println("Flush failed: " + e.getMessage());
+            }
+        }
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (failure != null) {
+            System.out.println(failure);
+        }
+        System.out.printf("Loaded %d keys in %d ms, %d keys/s%n", loaded.get(), millis, loaded.get() * 1000 / millis);
+    }
+
+    private static void send(String address, int port, BlockingQueue<List<String>> batches) {
+        try (Socket socket = new Socket(InetAddress.getByName(address), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream input = openSession(socket);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            List<String> batch;
+            while ((batch = batches.take()) != END) {
+                if (failure != null) {
+                    continue;
+                }
+                String request = "{\"type\":\"bulkLoad\",\"value\":{\"records\":[" + String.join(",", batch) + "]}}";
+                JsonObject response = gson.fromJson(exchange(input, output, request), JsonObject.class);
+                if (!response.get("response").getAsString().equals("OK")) {
+                    failure = "Batch rejected: " + (response.has("reason") ? response.get("reason").getAsString() : response);
+                    continue;
+                }
+                loaded.addAndGet(response.getAsJsonObject("value").get("loaded").getAsLong());
+            }
+        } catch (IOException e) {
+            failure = "Connection failed: " + e.getMessage();
+            discard(batches);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void discard(BlockingQueue<List<String>> batches) {
+        try {
+            while (batches.take() != END) {
+                continue;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DataInputStream openSession(Socket socket) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+        output.writeUTF("{\"type\":\"session\",\"framing\":\"length\"}");
+        output.flush();
+        input.readUTF();
+        return input;
+    }
+
+    private static String exchange(DataInputStream input, DataOutputStream output, String request) throws IOException {
+        byte[] bytes = request.getBytes(StandardCharsets.UTF_8);
+        for (int attempt = 0; ; attempt++) {
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.flush();
+            byte[] response = new byte[input.readInt()];
+            input.readFully(response);
+            String responseJson = new String(response, StandardCharsets.UTF_8);
+            if (attempt == BUSY_RETRIES || !responseJson.startsWith("{\"response\":\"BUSY\"")) {
+                return responseJson;
+            }
+            try {
+                Thread.sleep(1 + ThreadLocalRandom.current().nextLong(BUSY_BACKOFF_MS << Math.min(attempt, 6)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return responseJson;
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package server;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static server.TestDatabase.json;
+import static server.TestDatabase.request;
+
+class CasVersionTest {
+
+    @BeforeAll
+    static void open() {
+        TestDatabase.open();
+    }
+
+    @Test
+    void casAcceptsVersionReadBack() {
+        assertEquals("OK", request("{\"type\":\"set\",\"key\":\"cas-read\",\"value\":1}").getResponse());
+        long version = request("{\"type\":\"version\",\"key\":\"cas-read\"}").getValue().getAsLong();
+
+        Response cas = request("{\"type\":\"cas\",\"key\":\"cas-read\",\"value\":{\"set\":2,\"version\":" + version + "}}");
+
+        assertEquals("OK", cas.getResponse(), String.valueOf(cas.getReason()));
+        assertEquals(json("2"), request("{\"type\":\"get\",\"key\":\"cas-read\"}").getValue());
+    }
+
+    @Test
+    void casChainsOnReturnedVersion() {
+        assertEquals("OK", request("{\"type\":\"set\",\"key\":\"cas-chain\",\"value\":0}").getResponse());
+        long version = request("{\"type\":\"version\",\"key\":\"cas-chain\"}").getValue().getAsLong();
+
+        for (int i = 1; i <= 3; i++) {
+            Response cas = request("{\"type\":\"cas\",\"key\":\"cas-chain\",\"value\":{\"set\":" + i + ",\"version\":" + version + "}}");
+            assertEquals("OK", cas.getResponse(), String.valueOf(cas.getReason()));
+            long next = cas.getValue().getAsJsonObject().get("version").getAsLong();
+            assertTrue(next > version);
+            assertEquals(next, request("{\"type\":\"version\",\"key\":\"cas-chain\"}").getValue().getAsLong());
+            version = next;
+        }
+        assertEquals(json("3"), request("{\"type\":\"get\",\"key\":\"cas-chain\"}").getValue());
+    }
+
+    @Test
+    void casRejectsStaleVersion() {
+        assertEquals("OK", request("{\"type\":\"set\",\"key\":\"cas-stale\",\"value\":1}").getResponse());
+        long stale = request("{\"type\":\"version\",\"key\":\"cas-stale\"}").getValue().getAsLong();
+        assertEquals("OK", request("{\"type\":\"set\",\"key\":\"cas-stale\",\"value\":2}").getResponse());
+
+        Response cas = request("{\"type\":\"cas\",\"key\":\"cas-stale\",\"value\":{\"set\":3,\"version\":" + stale + "}}");
+
+        assertEquals("ERROR", cas.getResponse());
+        assertEquals("Compare failed", cas.getReason());
+        long current = request("{\"type\":\"version\",\"key\":\"cas-stale\"}").getValue().getAsLong();
+        assertEquals(current, cas.getValue().getAsJsonObject().get("version").getAsLong());
+        assertEquals(json("2"), request("{\"type\":\"get\",\"key\":\"cas-stale\"}").getValue());
+    }
+
+    @Test
+    void casOnMissingKeyUsesVersionZero() {
+        Response cas = request("{\"type\":\"cas\",\"key\":\"cas-new\",\"value\":{\"set\":1,\"version\":0}}");
+
+        assertEquals("OK", cas.getResponse(), String.valueOf(cas.getReason()));
+        assertEquals(json("1"), request("{\"type\":\"get\",\"key\":\"cas-new\"}").getValue());
+    }
+}
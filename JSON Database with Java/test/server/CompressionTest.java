@@ -0,0 +1,34 @@
+package server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionTest {
+
+    @Test
+    void inflateStopsAtMaxSize() {
+        byte[] zeros = new byte[1024 * 1024];
+        byte[] deflated = Compression.deflate(zeros, 0, zeros.length);
+
+        boolean rejected = false;
+        try {
+            Compression.inflate(deflated, 0, deflated.length, deflated.length, 64 * 1024);
+        } catch (UncheckedIOException e) {
+            rejected = true;
+        }
+
+        assertTrue(rejected, "inflating past the limit should be rejected");
+    }
+
+    @Test
+    void inflateAcceptsDataAtMaxSize() {
+        byte[] zeros = new byte[1024 * 1024];
+        byte[] deflated = Compression.deflate(zeros, 0, zeros.length);
+
+        assertEquals(zeros.length, Compression.inflate(deflated, 0, deflated.length, 0, zeros.length).length);
+    }
+}
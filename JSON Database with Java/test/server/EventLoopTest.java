@@ -0,0 +1,203 @@
+package server;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventLoopTest {
+
+    private static ExecutorService workers;
+    private static EventLoop eventLoop;
+    private static int port;
+
+    @BeforeAll
+    static void start() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        workers = Executors.newFixedThreadPool(2);
+        eventLoop = new EventLoop("127.0.0.1", port, 50, workers, EventLoopTest::handle, new Watchers());
+        Thread thread = new Thread(() -> {
+            try {
+                eventLoop.run();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }, "event-loop-test");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @AfterAll
+    static void stop() {
+        eventLoop.stop();
+        workers.shutdownNow();
+    }
+
+    private static Response handle(JsonObject request) {
+        if (request.get("type").getAsString().equals("fail")) {
+            throw new IllegalStateException("handler failed");
+        }
+        if (request.get("type").getAsString().equals("unencodable")) {
+            Response response = new Response("OK");
+            response.setSerialized("");
+            response.setId(request.get("id"));
+            return response;
+        }
+        Response response = new Response("OK", request.get("key"), null);
+        response.setId(request.get("id"));
+        return response;
+    }
+
+    @Test
+    void unparsableRequestKeepsSessionOpen() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            output.writeUTF("{\"type\":\"session\",\"id\":1}");
+            assertEquals("OK", reply(input.readUTF()).get("response").getAsString());
+
+            output.writeUTF("{not json");
+            JsonObject malformed = reply(input.readUTF());
+            assertEquals("ERROR", malformed.get("response").getAsString());
+            assertFalse(malformed.has("id"));
+
+            output.writeUTF("{\"type\":\"get\",\"key\":\"a\",\"id\":2}");
+            JsonObject next = reply(input.readUTF());
+            assertEquals("OK", next.get("response").getAsString());
+            assertEquals(2, next.get("id").getAsInt());
+        }
+    }
+
+    @Test
+    void invalidRequestIsAnsweredWithItsId() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            output.writeUTF("{\"type\":\"session\"}");
+            input.readUTF();
+
+            output.writeUTF("{\"key\":\"a\",\"id\":3}");
+            output.writeUTF("{\"type\":\"fail\",\"id\":4}");
+            output.writeUTF("{\"type\":\"get\",\"key\":\"b\",\"id\":5}");
+
+            JsonObject missingType = reply(input.readUTF());
+            assertEquals("ERROR", missingType.get("response").getAsString());
+            assertEquals(3, missingType.get("id").getAsInt());
+            JsonObject failed = reply(input.readUTF());
+            assertEquals("ERROR", failed.get("response").getAsString());
+            assertEquals("Internal server error", failed.get("reason").getAsString());
+            assertEquals(4, failed.get("id").getAsInt());
+            JsonObject next = reply(input.readUTF());
+            assertEquals("OK", next.get("response").getAsString());
+            assertEquals(5, next.get("id").getAsInt());
+        }
+    }
+
+    @Test
+    void unencodableResponseKeepsSessionOpen() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            output.writeUTF("{\"type\":\"session\"}");
+            input.readUTF();
+
+            output.writeUTF("{\"type\":\"unencodable\",\"id\":8}");
+            JsonObject failed = reply(input.readUTF());
+            assertEquals("ERROR", failed.get("response").getAsString());
+            assertEquals("Internal server error", failed.get("reason").getAsString());
+            assertEquals(8, failed.get("id").getAsInt());
+
+            output.writeUTF("{\"type\":\"get\",\"key\":\"d\",\"id\":9}");
+            JsonObject next = reply(input.readUTF());
+            assertEquals("OK", next.get("response").getAsString());
+            assertEquals(9, next.get("id").getAsInt());
+        }
+    }
+
+    @Test
+    void malformedLengthFramedPayloadKeepsSessionOpen() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            output.writeUTF("{\"type\":\"session\",\"framing\":\"length\"}");
+            input.readUTF();
+
+            writeFrame(output, "[1,2");
+            assertEquals("ERROR", reply(readFrame(input)).get("response").getAsString());
+
+            writeFrame(output, "{\"type\":\"get\",\"key\":\"c\",\"id\":6}");
+            JsonObject next = reply(readFrame(input));
+            assertEquals("OK", next.get("response").getAsString());
+            assertEquals(6, next.get("id").getAsInt());
+        }
+    }
+
+    @Test
+    void framingErrorClosesConnection() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            output.writeUTF("{\"type\":\"session\",\"framing\":\"length\"}");
+            input.readUTF();
+
+            output.writeInt(Integer.MAX_VALUE);
+            output.flush();
+
+            boolean closed = false;
+            try {
+                input.readInt();
+            } catch (EOFException | SocketException e) {
+                closed = true;
+            }
+            assertTrue(closed, "connection should be closed after an oversized frame header");
+        }
+    }
+
+    @Test
+    void legacyConnectionClosesAfterMalformedRequest() throws IOException {
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            output.writeUTF("{\"key\":\"a\",\"id\":7}");
+            JsonObject malformed = reply(input.readUTF());
+            assertEquals("ERROR", malformed.get("response").getAsString());
+            assertEquals(7, malformed.get("id").getAsInt());
+            assertEquals(-1, input.read());
+        }
+    }
+
+    private static JsonObject reply(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    private static void writeFrame(DataOutputStream output, String json) throws IOException {
+        byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(payload.length);
+        output.write(payload);
+        output.flush();
+    }
+
+    private static String readFrame(DataInputStream input) throws IOException {
+        byte[] payload = new byte[input.readInt()];
+        input.readFully(payload);
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,42 @@
+package server;
+
+import com.google.gson.JsonArray;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiryTest {
+
+    @BeforeAll
+    static void open() {
+        TestDatabase.open();
+    }
+
+    @Test
+    void keysSkipsExpiredKeys() {
+        TestDatabase.request("{\"type\":\"set\",\"key\":\"expiry-keys-live\",\"value\":1}");
+        TestDatabase.request("{\"type\":\"set\",\"key\":\"expiry-keys-gone\",\"value\":2}");
+        assertEquals("OK", TestDatabase.request("{\"type\":\"expireAt\",\"key\":\"expiry-keys-gone\",\"value\":1}").getResponse());
+
+        assertNull(TestDatabase.request("{\"type\":\"get\",\"key\":\"expiry-keys-gone\"}").getValue());
+        JsonArray keys = TestDatabase.request("{\"type\":\"keys\"}").getValue().getAsJsonArray();
+        assertTrue(keys.contains(TestDatabase.json("\"expiry-keys-live\"")));
+        assertFalse(keys.contains(TestDatabase.json("\"expiry-keys-gone\"")));
+    }
+
+    @Test
+    void querySkipsExpiredKeys() {
+        TestDatabase.request("{\"type\":\"createIndex\",\"key\":[\"expiryScore\"]}");
+        TestDatabase.request("{\"type\":\"set\",\"key\":\"expiry-query-live\",\"value\":{\"expiryScore\":5}}");
+        TestDatabase.request("{\"type\":\"set\",\"key\":\"expiry-query-gone\",\"value\":{\"expiryScore\":5}}");
+        assertEquals("OK", TestDatabase.request("{\"type\":\"expireAt\",\"key\":\"expiry-query-gone\",\"value\":1}").getResponse());
+
+        Response response = TestDatabase.request("{\"type\":\"query\",\"key\":[\"expiryScore\"],\"value\":{\"eq\":5}}");
+        assertEquals("OK", response.getResponse());
+        assertEquals(TestDatabase.json("[\"expiry-query-live\"]"), response.getValue());
+    }
+}
@@ -0,0 +1,58 @@
+package server;
+
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class MappedStorageTest {
+
+    @Test
+    void writesAcrossSegmentsSurviveReopen() throws IOException {
+        File file = new File(Files.createTempDirectory("jsondb-mapped").toFile(), "db.dat");
+        MappedStorage storage = new MappedStorage(4096, 1024);
+        storage.readSnapshot(file);
+
+        for (int i = 0; i < 200; i++) {
+            storage.put("key" + i, new JsonPrimitive("value-" + i + "-" + "y".repeat(40)));
+            if (i % 50 == 0) {
+                storage.snapshot().writeTo(file);
+            }
+        }
+        storage.remove("key7");
+        storage.snapshot().writeTo(file);
+
+        MappedStorage reopened = new MappedStorage(4096, 1024);
+        reopened.readSnapshot(file);
+        assertEquals(199, reopened.size());
+        assertEquals(new JsonPrimitive("value-150-" + "y".repeat(40)), reopened.get("key150"));
+        assertNull(reopened.get("key7"));
+    }
+
+    @Test
+    void indexStaysSizedToLiveKeysUnderChurn() throws Exception {
+        File file = new File(Files.createTempDirectory("jsondb-mapped").toFile(), "db.dat");
+        MappedStorage storage = new MappedStorage(1 << 20, 1024);
+        storage.readSnapshot(file);
+
+        for (int i = 0; i < 20_000; i++) {
+            storage.put("session" + i, new JsonPrimitive(i));
+            if (i >= 10) {
+                storage.remove("session" + (i - 10));
+            }
+        }
+
+        Field capacity = MappedStorage.class.getDeclaredField("indexCapacity");
+        capacity.setAccessible(true);
+        assertEquals(1024, capacity.getInt(storage));
+        assertEquals(10, storage.size());
+        assertEquals(new JsonPrimitive(19_999), storage.get("session19999"));
+        assertNull(storage.get("session19989"));
+    }
+}
@@ -0,0 +1,66 @@
+package server;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ReplicationLogTest {
+
+    @Test
+    void recordsAreServedOnlyOnceDurable() throws IOException {
+        ReplicationLog log = new ReplicationLog(16);
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        log.append(record("a"), record -> first);
+        log.append(record("b"), record -> second);
+
+        assertEquals(0, log.read(1, 10).size());
+        second.complete(null);
+        assertEquals(0, log.read(1, 10).size());
+        first.complete(null);
+        assertEquals(2, log.read(1, 10).size());
+        assertEquals(2, log.getDurableSeq());
+
+        log.append(record("c"), record -> null);
+        assertEquals(3, log.read(1, 10).size());
+    }
+
+    @Test
+    void failedRecordStartsNewEpoch() throws IOException {
+        ReplicationLog log = new ReplicationLog(16);
+        log.append(record("a"), record -> null);
+        String epoch = log.getEpoch();
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+        log.append(record("b"), record -> failed);
+
+        failed.completeExceptionally(new IOException("disk full"));
+
+        assertFalse(epoch.equals(log.getEpoch()));
+        assertNull(log.read(1, 10));
+        assertEquals(0, log.read(3, 10).size());
+    }
+
+    @Test
+    void restoredPositionIsDurable() {
+        ReplicationLog log = new ReplicationLog(16);
+        log.restore("epoch", 7);
+
+        assertEquals(7, log.getDurableSeq());
+        assertNull(log.read(7, 10));
+        assertEquals(0, log.read(8, 10).size());
+    }
+
+    private static JsonObject record(String key) {
+        JsonObject record = new JsonObject();
+        record.addProperty("type", "set");
+        record.addProperty("key", key);
+        record.addProperty("value", 1);
+        return record;
+    }
+}
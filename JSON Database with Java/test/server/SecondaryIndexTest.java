@@ -0,0 +1,82 @@
+package server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SecondaryIndexTest {
+
+    private final SecondaryIndex index = mixedIndex();
+
+    @Test
+    void greaterThanNumberSkipsStrings() {
+        assertEquals(List.of("n90", "n100"), index.query(predicate("{\"gt\":80}")));
+    }
+
+    @Test
+    void lessThanNumberSkipsBooleans() {
+        assertEquals(List.of("n5", "n90"), index.query(predicate("{\"lt\":100}")));
+    }
+
+    @Test
+    void closedNumberRange() {
+        assertEquals(List.of("n90", "n100"), index.query(predicate("{\"gte\":90,\"lte\":100}")));
+        assertEquals(List.of(), index.query(predicate("{\"gt\":90,\"lt\":100}")));
+    }
+
+    @Test
+    void stringRangesStayWithinStrings() {
+        assertEquals(List.of("s-100", "s-apple", "s-pear"), index.query(predicate("{\"gte\":\"\"}")));
+        assertEquals(List.of("s-100", "s-apple"), index.query(predicate("{\"lt\":\"b\"}")));
+    }
+
+    @Test
+    void booleanRangesStayWithinBooleans() {
+        assertEquals(List.of("b-false", "b-true"), index.query(predicate("{\"gte\":false}")));
+        assertEquals(List.of("b-true"), index.query(predicate("{\"gt\":false}")));
+    }
+
+    @Test
+    void equalityMatchesOnlySameType() {
+        assertEquals(List.of("n100"), index.query(predicate("{\"eq\":100}")));
+        assertEquals(List.of("s-100"), index.query(predicate("{\"eq\":\"100\"}")));
+    }
+
+    @Test
+    void emptyAndMixedRanges() {
+        assertEquals(List.of(), index.query(predicate("{\"gt\":100,\"lt\":5}")));
+        assertEquals(List.of(), index.query(predicate("{\"gt\":5,\"lt\":\"z\"}")));
+    }
+
+    @Test
+    void updatesMoveKeysBetweenTypes() {
+        index.update("n90", new JsonPrimitive("zebra"));
+        assertEquals(List.of("n100"), index.query(predicate("{\"gt\":80}")));
+        assertEquals(List.of("n90"), index.query(predicate("{\"gt\":\"y\"}")));
+        index.update("n90", null);
+        assertEquals(List.of(), index.query(predicate("{\"gt\":\"y\"}")));
+    }
+
+    private static SecondaryIndex mixedIndex() {
+        SecondaryIndex index = new SecondaryIndex(new JsonArray());
+        index.update("b-false", new JsonPrimitive(false));
+        index.update("b-true", new JsonPrimitive(true));
+        index.update("n5", new JsonPrimitive(5));
+        index.update("n90", new JsonPrimitive(90));
+        index.update("n100", new JsonPrimitive(100.0));
+        index.update("s-100", new JsonPrimitive("100"));
+        index.update("s-apple", new JsonPrimitive("apple"));
+        index.update("s-pear", new JsonPrimitive("pear"));
+        return index;
+    }
+
+    private static JsonObject predicate(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+}
@@ -0,0 +1,45 @@
+package server;
+
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StorageSnapshotTest {
+
+    @Test
+    void jsonSnapshotKeepsCapturedState() throws IOException {
+        assertCapturedState(() -> new JsonStorage(false), "db.json");
+    }
+
+    @Test
+    void binarySnapshotKeepsCapturedState() throws IOException {
+        assertCapturedState(() -> new BinaryStorage(0, true), "db.bin");
+    }
+
+    private static void assertCapturedState(Supplier<Storage> engine, String name) throws IOException {
+        File file = new File(Files.createTempDirectory("jsondb-snapshot").toFile(), name);
+        Storage storage = engine.get();
+        storage.put("a", new JsonPrimitive(1));
+        storage.put("b", new JsonPrimitive(2));
+
+        Storage.Snapshot snapshot = storage.snapshot();
+        storage.put("a", new JsonPrimitive(3));
+        storage.remove("b");
+        storage.put("c", new JsonPrimitive(4));
+        snapshot.writeTo(file);
+
+        Storage restored = engine.get();
+        restored.readSnapshot(file);
+        assertEquals(2, restored.size());
+        assertEquals(new JsonPrimitive(1), restored.get("a"));
+        assertEquals(new JsonPrimitive(2), restored.get("b"));
+        assertNull(restored.get("c"));
+    }
+}
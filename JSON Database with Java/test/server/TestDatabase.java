@@ -0,0 +1,40 @@
+package server;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+final class TestDatabase {
+
+    private static boolean open;
+
+    private TestDatabase() {
+    }
+
+    static synchronized void open() {
+        if (open) {
+            return;
+        }
+        try {
+            System.setProperty("jsondb.dataDir", Files.createTempDirectory("jsondb-test").toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.setProperty("jsondb.persistence", "wal");
+        if (!Main.openStorage()) {
+            throw new IllegalStateException("Could not open storage");
+        }
+        open = true;
+    }
+
+    static Response request(String json) {
+        return Main.execute(JsonParser.parseString(json).getAsJsonObject());
+    }
+
+    static JsonElement json(String json) {
+        return JsonParser.parseString(json);
+    }
+}
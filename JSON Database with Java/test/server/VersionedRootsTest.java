@@ -0,0 +1,41 @@
+package server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class VersionedRootsTest {
+
+    @Test
+    void latestHidesInFlightValues() {
+        JsonStorage storage = new JsonStorage(false);
+        VersionedRoots roots = new VersionedRoots(storage, 100);
+        JsonObject committed = new JsonObject();
+        committed.addProperty("name", "old");
+        storage.put("doc", committed);
+
+        long version = roots.begin(List.of("doc", "fresh"));
+        JsonObject pending = new JsonObject();
+        pending.addProperty("name", "new");
+        storage.put("doc", pending);
+        storage.put("fresh", new JsonPrimitive(1));
+
+        JsonArray path = new JsonArray();
+        path.add("doc");
+        path.add("name");
+        assertEquals(committed, roots.latest("doc"));
+        assertEquals(new JsonPrimitive("old"), roots.latest(path));
+        assertNull(roots.latest("fresh"));
+
+        roots.commit(List.of("doc", "fresh"), version, true);
+        assertEquals(pending, roots.latest("doc"));
+        assertEquals(new JsonPrimitive("new"), roots.latest(path));
+        assertEquals(new JsonPrimitive(1), roots.latest("fresh"));
+    }
+}
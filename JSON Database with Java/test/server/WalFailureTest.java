@@ -0,0 +1,86 @@
+package server;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static server.TestDatabase.json;
+import static server.TestDatabase.request;
+
+class WalFailureTest {
+
+    @BeforeAll
+    static void open() {
+        TestDatabase.open();
+    }
+
+    @Test
+    void failedAppendIsNotApplied() throws Exception {
+        assertEquals("OK", request("{\"type\":\"set\",\"key\":\"wal-fail\",\"value\":1}").getResponse());
+        long version = request("{\"type\":\"version\",\"key\":\"wal-fail\"}").getValue().getAsLong();
+
+        withBrokenLog(() -> {
+            Response set = request("{\"type\":\"set\",\"key\":\"wal-fail\",\"value\":2}");
+            assertEquals("ERROR", set.getResponse());
+            assertEquals("Write could not be persisted", set.getReason());
+            assertEquals("ERROR", request("{\"type\":\"set\",\"key\":\"wal-fail-new\",\"value\":1,\"ttl\":60000}").getResponse());
+            assertEquals("ERROR", request("{\"type\":\"mset\",\"key\":[\"wal-fail\",\"wal-fail-new\"],\"value\":[3,3]}").getResponse());
+            assertEquals("ERROR", request("{\"type\":\"transaction\",\"value\":[{\"type\":\"delete\",\"key\":\"wal-fail\"}]}").getResponse());
+        });
+
+        assertEquals(json("1"), request("{\"type\":\"get\",\"key\":\"wal-fail\"}").getValue());
+        long rolledBack = request("{\"type\":\"version\",\"key\":\"wal-fail\"}").getValue().getAsLong();
+        assertTrue(rolledBack > version);
+        assertEquals("ERROR", request("{\"type\":\"cas\",\"key\":\"wal-fail\",\"value\":{\"version\":" + version + ",\"set\":5}}").getResponse());
+        assertNull(request("{\"type\":\"get\",\"key\":\"wal-fail-new\"}").getValue());
+        assertEquals("OK", request("{\"type\":\"set\",\"key\":\"wal-fail\",\"value\":4}").getResponse());
+    }
+
+    @Test
+    void failedGroupCommitIsRolledBack() throws Exception {
+        assertEquals("OK", request("{\"type\":\"set\",\"key\":\"group-fail\",\"value\":1}").getResponse());
+
+        Field field = Main.class.getDeclaredField("groupCommitter");
+        field.setAccessible(true);
+        GroupCommitter committer = new GroupCommitter(brokenLog(), 1, 16);
+        field.set(null, committer);
+        try {
+            Response set = request("{\"type\":\"set\",\"key\":\"group-fail\",\"value\":2,\"ttl\":60000}");
+            assertEquals("ERROR", set.getResponse());
+            assertEquals("Write could not be persisted", set.getReason());
+            assertEquals("ERROR", request("{\"type\":\"mset\",\"key\":[\"group-fail\",\"group-fail-new\"],\"value\":[3,3]}").getResponse());
+        } finally {
+            field.set(null, null);
+            committer.close();
+        }
+
+        assertEquals(json("1"), request("{\"type\":\"get\",\"key\":\"group-fail\"}").getValue());
+        assertEquals(json("-1"), request("{\"type\":\"ttl\",\"key\":\"group-fail\"}").getValue());
+        assertNull(request("{\"type\":\"get\",\"key\":\"group-fail-new\"}").getValue());
+    }
+
+    private static WriteAheadLog brokenLog() throws Exception {
+        File dir = Files.createTempDirectory("jsondb-broken").toFile();
+        WriteAheadLog broken = new WriteAheadLog(new File(dir, "db.wal"), WriteAheadLog.SyncPolicy.ALWAYS, 0);
+        broken.close();
+        return broken;
+    }
+
+    private static void withBrokenLog(Runnable body) throws Exception {
+        Field field = Main.class.getDeclaredField("wal");
+        field.setAccessible(true);
+        WriteAheadLog healthy = (WriteAheadLog) field.get(null);
+        field.set(null, brokenLog());
+        try {
+            body.run();
+        } finally {
+            field.set(null, healthy);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package server;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+
+    @Test
+    void replayStopsAtTornTailAndTruncatesIt() throws IOException {
+        File file = new File(Files.createTempDirectory("jsondb-wal").toFile(), "db.wal");
+        try (WriteAheadLog wal = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.ALWAYS, 0)) {
+            wal.append(record("a", 1));
+            wal.append(record("b", 2));
+        }
+        long intact = file.length();
+        Files.write(file.toPath(), "{\"type\":\"set\",\"key\":\"c\",\"va".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        List<JsonObject> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.ALWAYS, 0)) {
+            assertEquals(2, wal.replay(replayed::add));
+            assertEquals(intact, file.length());
+            wal.append(record("d", 4));
+        }
+
+        assertEquals(List.of("a", "b"), keysOf(replayed));
+        replayed.clear();
+        try (WriteAheadLog wal = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.ALWAYS, 0)) {
+            assertEquals(3, wal.replay(replayed::add));
+        }
+        assertEquals(List.of("a", "b", "d"), keysOf(replayed));
+    }
+
+    @Test
+    void replayKeepsCompleteLog() throws IOException {
+        File file = new File(Files.createTempDirectory("jsondb-wal").toFile(), "db.wal");
+        try (WriteAheadLog wal = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.ALWAYS, 0)) {
+            wal.append(record("a", 1));
+            wal.rotate();
+            wal.append(record("b", 2));
+        }
+        long length = file.length();
+
+        List<JsonObject> replayed = new ArrayList<>();
+        try (WriteAheadLog wal = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.ALWAYS, 0)) {
+            assertEquals(2, wal.replay(replayed::add));
+        }
+
+        assertEquals(List.of("a", "b"), keysOf(replayed));
+        assertEquals(length, file.length());
+    }
+
+    @Test
+    void deferredAppendCompletesOnSync() throws IOException {
+        File file = new File(Files.createTempDirectory("jsondb-wal").toFile(), "db.wal");
+        try (WriteAheadLog wal = new WriteAheadLog(file, WriteAheadLog.SyncPolicy.ALWAYS, 0)) {
+            CompletableFuture<Void> synced = wal.append(record("a", 1), false);
+            assertFalse(synced.isDone());
+            assertNull(wal.append(record("b", 2), true));
+            assertTrue(synced.isDone());
+
+            CompletableFuture<Void> deferred = wal.append(record("c", 3), false);
+            wal.sync();
+            assertTrue(deferred.isDone());
+        }
+    }
+
+    private static JsonObject record(String key, int value) {
+        JsonObject record = new JsonObject();
+        record.addProperty("type", "set");
+        record.addProperty("key", key);
+        record.add("value", new JsonPrimitive(value));
+        return record;
+    }
+
+    private static List<String> keysOf(List<JsonObject> records) {
+        List<String> keys = new ArrayList<>();
+        records.forEach(record -> keys.add(record.get("key").getAsString()));
+        return keys;
+    }
+}